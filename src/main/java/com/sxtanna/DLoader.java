@@ -1,24 +1,62 @@
 package com.sxtanna;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.Maps;
+import com.sxtanna.base.Attachment;
 import com.sxtanna.base.Dependency;
+import com.sxtanna.base.Plan;
+import com.sxtanna.base.PlannedArtifact.Action;
+import com.sxtanna.store.ArtifactEntry;
+import com.sxtanna.store.ArtifactIndex;
+import com.sxtanna.store.Eviction;
+import com.sxtanna.transport.HttpTransport;
+import com.sxtanna.transport.Transports;
+import com.sxtanna.util.Deadline;
+import com.sxtanna.util.Planner;
+import com.sxtanna.util.Prefetch;
+import com.sxtanna.util.Resolver;
+import com.sxtanna.util.Staging;
 import com.sxtanna.util.Urls;
-import com.sxtanna.util.Xmls;
+import com.sxtanna.util.Warmup;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.PluginDescriptionFile;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,21 +66,28 @@ import java.util.logging.Logger;
  * Handles loading Dependencies from the Config and other Plugins
  */
 @SuppressWarnings("WeakerAccess")
-public final class DLoader extends JavaPlugin {
+public final class DLoader extends JavaPlugin implements Listener {
 
 	private static DLoader instance;
 
+	/**
+	 * Hours between collecting unused Dependencies, after the first time
+	 */
+	private static final long GARBAGE_INTERVAL_HOURS = 6;
+
 
 	private static Method method;
-	private static URLClassLoader classLoader = ((URLClassLoader) ClassLoader.getSystemClassLoader());
+	private static URLClassLoader classLoader;
 
-	private static boolean working = true, showDebug = false, enforceFileCheck = true;
+	private static boolean working = true, showDebug = false, enforceFileCheck = true, backgroundUpdates = false;
 
 	static {
 		try {
+			classLoader = ((URLClassLoader) ClassLoader.getSystemClassLoader());
+
 			method = URLClassLoader.class.getDeclaredMethod("addURL", URL.class);
 			method.setAccessible(true);
-		} catch (NoSuchMethodException e) {
+		} catch (Exception e) {
 			log(Level.SEVERE, "Failed to initialize URLClassLoader, Dependencies will not be loaded!");
 			e.printStackTrace();
 
@@ -51,8 +96,19 @@ public final class DLoader extends JavaPlugin {
 	}
 
 
-	private File dependencyFolder;
-	private final Map<String, Dependency> dependencies = Maps.newHashMap();
+	private File dependencyFolder, stagingFolder;
+	private long updateInterval, startTime, cacheSize;
+	private int unusedDays, keepSnapshots;
+	private boolean warmup, warmupInitialize, exclusiveFolder;
+	private ExecutorService warmupThread, fetchPool;
+	private long startupTimeout, startupDeadline;
+	private Resolver resolver;
+	private List<Dependency> declared = Collections.emptyList();
+	private final Map<String, List<String>> warmupRecord = new ConcurrentHashMap<>();
+	private final Map<String, Dependency> dependencies = new ConcurrentHashMap<>();
+	private final Set<File> attachedJars = ConcurrentHashMap.newKeySet();
+	private final Set<String> attachedKeys = ConcurrentHashMap.newKeySet();
+	private final Map<String, Attachment> attachments = new ConcurrentHashMap<>();
 
 
 	@SuppressWarnings("ResultOfMethodCallIgnored")
@@ -61,17 +117,79 @@ public final class DLoader extends JavaPlugin {
 		instance = this;
 		if (!working) return;
 
-		dependencyFolder = new File(getDataFolder(), "Dependencies");
-		if (!dependencyFolder.exists()) dependencyFolder.mkdirs();
+		startTime = System.currentTimeMillis();
 
 		saveDefaultConfig();
 
 		FileConfiguration config = getConfig();
+
+		final String sharedFolder = config.getString("options.sharedFolder", "");
+		dependencyFolder = sharedFolder.isEmpty() ? new File(getDataFolder(), "Dependencies") : new File(sharedFolder);
+		exclusiveFolder = sharedFolder.isEmpty();
+		if (!dependencyFolder.exists()) dependencyFolder.mkdirs();
+
 		showDebug = config.getBoolean("options.showDebug", false);
-		enforceFileCheck = config.getBoolean("options.showDebug", true);
+		enforceFileCheck = config.getBoolean("options.enforceFileCheck", true);
+
+		final String mirror = config.getString("options.mirror", "");
+		if (!mirror.isEmpty()) Urls.setRepositories(Collections.singletonList(mirror));
 
 		Urls.addRepositories(config.getStringList("options.repositories"));
 
+		final HttpTransport http = new HttpTransport(
+				(int) TimeUnit.SECONDS.toMillis(config.getInt("options.connectTimeout", 10)),
+				(int) TimeUnit.SECONDS.toMillis(config.getInt("options.readTimeout", 30)));
+
+		Transports.register("http", http);
+		Transports.register("https", http);
+
+		Urls.setArtifactTimeout(TimeUnit.SECONDS.toMillis(config.getLong("options.artifactTimeout", 120)));
+
+		startupTimeout = TimeUnit.SECONDS.toMillis(config.getLong("options.startupTimeout", 180));
+		startupDeadline = Deadline.after(startupTimeout);
+
+		final AtomicInteger fetchThreads = new AtomicInteger();
+
+		fetchPool = Executors.newFixedThreadPool(Math.max(1, config.getInt("options.parallelDownloads", 4)), runnable -> {
+			final Thread thread = new Thread(runnable, "DLoader Fetch #" + fetchThreads.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		// the server thread only waits on repositories until the startup deadline
+		resolver = new Resolver(dependencyFolder, fetchPool);
+		if (startupTimeout > 0) resolver.setStartup(Thread.currentThread(), startupDeadline);
+
+		backgroundUpdates = config.getBoolean("options.backgroundUpdates", false);
+		updateInterval = config.getLong("options.updateInterval", 60);
+
+		stagingFolder = new File(dependencyFolder, ".staging");
+
+		cacheSize = config.getLong("options.cacheSize", 0);
+		unusedDays = config.getInt("options.unusedDays", 30);
+		keepSnapshots = config.getInt("options.keepSnapshots", 2);
+
+		warmup = config.getBoolean("options.warmup", false);
+		warmupInitialize = config.getBoolean("options.warmupInitialize", false);
+
+		if (warmup) {
+			warmupRecord.putAll(Warmup.read(new File(getDataFolder(), "warmup.txt")));
+
+			warmupThread = Executors.newSingleThreadExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, "DLoader Warmup");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+
+				return thread;
+			});
+		}
+
+		if (backgroundUpdates) {
+			Staging.apply(dependencyFolder, stagingFolder);
+			Urls.setPreferLocal(true);
+		}
+
 		PluginDescriptionFile pluginDesc = getDescription();
 
 		log(Level.INFO,
@@ -82,44 +200,119 @@ public final class DLoader extends JavaPlugin {
 				"<  ",
 				"< Showing Debug Messages? -> " + showDebug,
 				"< Enforcing File Check? -> " + enforceFileCheck,
+				"< Updating in Background? -> " + backgroundUpdates,
+				"< Dependency Folder -> " + dependencyFolder.getPath(),
 				"<  ",
 				blockBar(45),
 				" ", " ");
 
-		ConfigurationSection configDeps = config.getConfigurationSection("dependencies");
-		if (configDeps == null) return;
+		declared = readDependencies(config);
 
+		// download the whole graph in one parallel pass, loading it afterwards only reads from disk
+		final long resolveStart = System.nanoTime();
 
-		Set<String> keys = configDeps.getKeys(false);
+		try {
+			final int artifacts = Deadline.within(startupDeadline, () -> Prefetch.prefetch(declared, dependencyFolder, fetchPool));
+			log(Level.INFO, "Resolved " + artifacts + " artifacts for " + declared.size() + " declared Dependencies in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - resolveStart) + "ms");
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
 
-		keys.forEach(name -> {
+		declared.forEach(dependency -> {
+			if (dependencies.containsValue(dependency)) debug("Dependency " + dependency.getName() + " has a duplicate");
 
-			String  groupId      = configDeps.getString(name + ".group", "");
-			String  version      = configDeps.getString(name + ".version", "");
-			String  artifactId   = configDeps.getString(name + ".artifact", "");
-			String  customRepo   = configDeps.getString(name + ".repository", "");
-			boolean alwaysUpdate = configDeps.getBoolean(name + ".always-update", false);
+			debug("Attempting load of declared Dependency " + dependency.getName());
+			load(dependency);
+		});
 
-			if (version.isEmpty() || groupId.isEmpty() || artifactId.isEmpty()) {
-				log(Level.SEVERE,
-						" ", " ",
-						blockBar(45),
-						"< ",
-						"< Dependency " + name + " has incomplete details",
-						"< Requires, case-sensitive",
-						"< 'version', 'group', 'artifact'",
-						"< ",
-						blockBar(45),
-						" ", " ");
-			} else {
-				final Dependency dependency = new Dependency(name.toLowerCase(), version, groupId, artifactId, customRepo, alwaysUpdate);
-				if (dependencies.containsValue(dependency)) debug("Dependency " + name + " has a duplicate");
+	}
 
-				debug("Attempting load of Dependency " + name + " From Config");
-				load(dependency);
-			}
+
+	@Override
+	public void onEnable() {
+		if (!working) return;
+
+		// startup is over, Dependencies loaded from here on may take as long as their own timeouts allow
+		resolver.setStartup(null, 0);
+		Urls.forgetStartup();
+
+		getServer().getPluginManager().registerEvents(this, this);
+
+		// give other plugins a minute to finish loading their Dependencies first, then keep the folder in check while the server runs
+		getServer().getScheduler().runTaskTimerAsynchronously(this, this::collectGarbage, 60 * 20, TimeUnit.HOURS.toSeconds(GARBAGE_INTERVAL_HOURS) * 20);
+
+		if (!backgroundUpdates) return;
+
+		final long ticks = TimeUnit.MINUTES.toSeconds(Math.max(1, updateInterval)) * 20;
+		getServer().getScheduler().runTaskTimerAsynchronously(this, this::stageUpdates, ticks, ticks);
+	}
+
+	@Override
+	public void onDisable() {
+		if (!working) return;
+
+		fetchPool.shutdownNow();
+
+		if (warmup) {
+			warmupThread.shutdownNow();
+
+			attachedJars.forEach(jar -> recordWarmup(jar, classLoader));
+			attachments.values().forEach(attachment -> attachment.getJars().forEach(jar -> recordWarmup(jar, attachment.getClassLoader())));
+
+			Warmup.write(new File(getDataFolder(), "warmup.txt"), new TreeMap<>(warmupRecord));
+		}
+
+		attachments.values().forEach(this::close);
+		attachments.clear();
+
+		// keep attach times, even if the server never ran long enough to collect garbage
+		ArtifactIndex.of(dependencyFolder).save();
+	}
+
+
+	@Override
+	public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+		if (args.length == 0 || !args[0].equalsIgnoreCase("plan")) return false;
+
+		sender.sendMessage("Planning the Dependencies in the Config...");
+
+		final File configFile = new File(getDataFolder(), "config.yml");
+
+		getServer().getScheduler().runTaskAsynchronously(this, () -> {
+			// a copy read off of the main thread, the Config the server uses is left alone
+			final Plan plan = plan(readDependencies(YamlConfiguration.loadConfiguration(configFile)));
+
+			plan.getArtifacts().forEach(artifact -> {
+				final Dependency dependency = artifact.getDependency();
+				final String     coordinate = dependency.getGroupId() + ':' + dependency.getArtifactId() + ':' + dependency.getVersion();
+
+				switch (artifact.getAction()) {
+					case CACHED:
+						sender.sendMessage("  [cached] " + coordinate);
+						break;
+					case UP_TO_DATE:
+						sender.sendMessage("  [up to date] " + coordinate);
+						break;
+					case MISSING:
+						sender.sendMessage("  [missing] " + coordinate + " is in no repository");
+						break;
+					default:
+						sender.sendMessage("  [" + artifact.getAction().name().toLowerCase() + "] " + coordinate + ", " + formatSize(artifact.getSize()) + " from " + artifact.getRepository());
+						break;
+				}
+			});
+
+			sender.sendMessage(new String[]{
+					"Cached: " + plan.getArtifacts(Action.CACHED).size() +
+							", Up to date: " + plan.getArtifacts(Action.UP_TO_DATE).size() +
+							", Refreshed: " + plan.getArtifacts(Action.REFRESH).size() +
+							", Downloaded: " + plan.getArtifacts(Action.DOWNLOAD).size() +
+							", Missing: " + plan.getArtifacts(Action.MISSING).size(),
+					"Total download: " + formatSize(plan.getTotalBytes())
+			});
 		});
 
+		return true;
 	}
 
 
@@ -163,22 +356,128 @@ public final class DLoader extends JavaPlugin {
 	 *
 	 * @param dependency The Dependency to be loaded
 	 * @param whenDone   Block of code ran after everything is loaded
+	 *                   <p>If the server thread ran out of time, this runs later, on a background thread</p>
 	 * @see DLoader#load(Dependency)
 	 */
 	public void load(@NotNull Dependency dependency, @NotNull Runnable whenDone) {
-		debug(" ", " ", blockBar(60), " ", blockArrow(dependency, "v"));
+		resolver.resolve(dependency, this::loadJar, whenDone);
+	}
 
-		Urls.download(dependency, new File(dependencyFolder, dependency.getGroupId()), (jar, pom) -> {
+	/**
+	 * Load a {@link Dependency} into its own ClassLoader on behalf of a Plugin, and then pass that ClassLoader to a block of code
+	 * <p>
+	 * <p>Unlike {@link DLoader#load(Dependency)}, the Dependency isn't visible to other Plugins through the system ClassLoader</p>
+	 * <p>Plugins attaching the same Dependency share one ClassLoader, which is closed once every one of them is disabled</p>
+	 * <p>A Plugin reloaded with a newer version of the Dependency gets a fresh ClassLoader</p>
+	 *
+	 * @param plugin     The Plugin using the Dependency
+	 * @param dependency The Dependency to be attached
+	 * @param whenDone   Block of code ran with the ClassLoader after everything is loaded
+	 * @see DLoader#release(Plugin)
+	 */
+	public void attach(@NotNull Plugin plugin, @NotNull Dependency dependency, @NotNull Consumer<ClassLoader> whenDone) {
+		final String key = ArtifactEntry.keyOf(dependency);
 
-			if (!jar.exists() || !pom.exists())
-				debug("POM File Downloaded -> " + pom.exists(), "Jar File Downloaded -> " + jar.exists());
-			else {
-				loadJar(dependency, jar);
-				loadChildren(dependency, pom, whenDone);
-			}
+		final Attachment existing = attachments.computeIfPresent(key, (k, attachment) -> {
+			debug(plugin.getName() + " now shares " + dependency.getName() + " with " + attachment.getOwners());
+			attachment.retain(plugin.getName());
+			return attachment;
+		});
+
+		if (existing != null) {
+			whenDone.accept(existing.getClassLoader());
+			return;
+		}
+
+		// late children may be attached from the fetch thread
+		final Map<File, Dependency> jars = Collections.synchronizedMap(new LinkedHashMap<>());
+
+		resolver.resolve(dependency, (resolved, jar) -> {
+			attachedKeys.add(ArtifactEntry.keyOf(resolved));
+			if (jars.putIfAbsent(jar, resolved) == null) ArtifactIndex.of(dependencyFolder).touch(resolved);
+		}, () -> {
+			final AtomicBoolean created = new AtomicBoolean();
+
+			final Attachment attachment = attachments.compute(key, (k, current) -> {
+				if (current == null) {
+					current = new Attachment(dependency, jars.keySet(), ClassLoader.getSystemClassLoader());
+					created.set(true);
+					debug("Attached " + dependency.getName() + " in its own ClassLoader with " + jars.size() + " Jars");
+				}
+
+				current.retain(plugin.getName());
+				return current;
+			});
+
+			if (created.get()) jars.forEach((jar, resolved) -> {
+				warnShadowed(plugin, resolved);
+				warmup(resolved, jar, attachment.getClassLoader());
+			});
+
+			whenDone.accept(attachment.getClassLoader());
 		});
 	}
 
+	/**
+	 * Release every Dependency a Plugin attached, closing the ClassLoaders no other Plugin uses
+	 * <p>Called automatically when a Plugin is disabled</p>
+	 *
+	 * @param plugin The Plugin
+	 * @see DLoader#attach(Plugin, Dependency, Consumer)
+	 */
+	public void release(@NotNull Plugin plugin) {
+		attachments.keySet().forEach(key -> attachments.computeIfPresent(key, (k, attachment) -> {
+			if (!attachment.getOwners().contains(plugin.getName()) || attachment.release(plugin.getName()) > 0) return attachment;
+
+			if (warmup) attachment.getJars().forEach(jar -> recordWarmup(jar, attachment.getClassLoader()));
+
+			close(attachment);
+			return null;
+		}));
+	}
+
+	/**
+	 * Retrieve the Attachment of a Dependency, if any Plugin has it attached
+	 *
+	 * @param dependency The Dependency
+	 * @return An Optional containing either the Attachment, or null if not attached
+	 */
+	public Optional<Attachment> getAttachment(@NotNull Dependency dependency) {
+		return Optional.ofNullable(attachments.get(ArtifactEntry.keyOf(dependency)));
+	}
+
+
+	/**
+	 * Warn if another version of an attached Dependency is also in the system ClassLoader
+	 * <p>The Attachment uses its own, but the two share no classes, so their objects can't be passed between them</p>
+	 */
+	private void warnShadowed(Plugin plugin, Dependency attached) {
+		dependencies.values().stream()
+				.filter(loaded -> loaded.getGroupId().equals(attached.getGroupId()) && loaded.getArtifactId().equals(attached.getArtifactId()) && !loaded.getVersion().equals(attached.getVersion()))
+				.findFirst()
+				.ifPresent(loaded -> log(Level.WARNING, "Version " + loaded.getVersion() + " of " + attached.getGroupId() + ':' + attached.getArtifactId() + " is loaded for every Plugin, " +
+						plugin.getName() + " attached its own version " + attached.getVersion() + ", objects of its classes can't be passed between the two"));
+	}
+
+
+	@EventHandler
+	public void onPluginDisable(PluginDisableEvent event) {
+		if (event.getPlugin() != this) release(event.getPlugin());
+	}
+
+
+	/**
+	 * Work out what loading these Dependencies would cost, without downloading any Jars
+	 * <p>This does network I/O, and shouldn't be called from the main thread</p>
+	 *
+	 * @param dependencies The Dependencies that would be loaded, ie. those read from the Config
+	 * @return The Plan for the whole Dependency tree
+	 */
+	@NotNull
+	public Plan plan(@NotNull Collection<Dependency> dependencies) {
+		return Planner.plan(dependencies, dependencyFolder);
+	}
+
 	/**
 	 * Retrieve a Dependency ID by name
 	 *
@@ -190,43 +489,215 @@ public final class DLoader extends JavaPlugin {
 	}
 
 
-	private void loadChildren(Dependency dependency, File pomFile, Runnable whenDone) {
-		debug("Loading child dependencies of " + dependency.getName());
-		List<Dependency> children = Xmls.readDependencies(pomFile);
-		if (children.isEmpty()) {
-			debug("No children found in " + dependency.getName(), blockArrow(dependency, "^"), blockBar(60), " ", " ");
-			whenDone.run();
-			return;
-		}
+	/**
+	 * Every Dependency declared in the Config, and in the plugin.yml of every Plugin, each only once
+	 */
+	private List<Dependency> readDependencies(FileConfiguration config) {
+		final Map<String, Dependency> declared = new LinkedHashMap<>();
 
-		final int[] loaded = {0};
+		readConfigDependencies(config).forEach(dependency -> declared.putIfAbsent(ArtifactEntry.keyOf(dependency), dependency));
 
-		children.forEach(child -> {
-			child.setParent(dependency);
+		readPluginDependencies(!config.getString("options.mirror", "").isEmpty()).forEach(dependency -> {
+			final Dependency existing = declared.putIfAbsent(ArtifactEntry.keyOf(dependency), dependency);
+			if (existing != null) return;
 
-			load(child, () -> {
-				if (++loaded[0] == children.size()) {
-					debug("Finished loading children from " + dependency.getName(), blockArrow(dependency, "^"), " ", blockBar(60), " ", " ");
-					whenDone.run();
+			declared.values().stream()
+					.filter(other -> other != dependency && other.getGroupId().equals(dependency.getGroupId()) && other.getArtifactId().equals(dependency.getArtifactId()))
+					.findFirst()
+					.ifPresent(other -> log(Level.WARNING, "Both version " + other.getVersion() + " and " + dependency.getVersion() + " of " + dependency.getGroupId() + ':' + dependency.getArtifactId() + " are declared, classes will come from whichever is loaded first"));
+		});
+
+		return new ArrayList<>(declared.values());
+	}
+
+	/**
+	 * Read the "dloader" section of every Plugin's plugin.yml
+	 * <p>
+	 * <p>Plugins declare Dependencies as "group:artifact:version", and may add Repositories to look in</p>
+	 * <p>Those Repositories are only used for that Plugin's own Dependencies, and not at all if a mirror is set</p>
+	 * <p>The jars are read directly, Bukkit doesn't keep sections it doesn't know about</p>
+	 *
+	 * @param mirrored Whether every Dependency comes from a mirror
+	 */
+	private List<Dependency> readPluginDependencies(boolean mirrored) {
+		final List<Dependency> declared = new ArrayList<>();
+
+		final File[] jars = getDataFolder().getAbsoluteFile().getParentFile().listFiles((dir, name) -> name.endsWith(".jar"));
+		if (jars == null) return declared;
+
+		for (File jar : jars) {
+			try (JarFile jarFile = new JarFile(jar)) {
+				final JarEntry entry = jarFile.getJarEntry("plugin.yml");
+				if (entry == null) continue;
+
+				final YamlConfiguration description;
+
+				try (Reader reader = new InputStreamReader(jarFile.getInputStream(entry), StandardCharsets.UTF_8)) {
+					description = YamlConfiguration.loadConfiguration(reader);
 				}
-			});
+
+				final String plugin = description.getString("name", jar.getName());
+
+				List<String> repositories = description.getStringList("dloader.repositories");
+
+				if (mirrored && !repositories.isEmpty()) {
+					log(Level.INFO, "Ignoring the repositories of plugin " + plugin + ", Dependencies come from the mirror");
+					repositories = Collections.emptyList();
+				}
+
+				for (String coordinate : description.getStringList("dloader.dependencies")) {
+					final String[] parts = coordinate.trim().split(":");
+
+					if (parts.length != 3 || parts[0].isEmpty() || parts[1].isEmpty() || parts[2].isEmpty()) {
+						log(Level.SEVERE, "Plugin " + plugin + " declares Dependency '" + coordinate + "', it should be 'group:artifact:version'");
+						continue;
+					}
+
+					debug("Plugin " + plugin + " declares Dependency " + coordinate);
+
+					final Dependency dependency = new Dependency(coordinate.trim(), parts[2], parts[0], parts[1]);
+					dependency.getOptions().setExtraRepositories(repositories);
+
+					declared.add(dependency);
+				}
+			} catch (IOException e) {
+				debug("Failed to read plugin.yml of " + jar.getName());
+			}
+		}
+
+		return declared;
+	}
+
+	private List<Dependency> readConfigDependencies(FileConfiguration config) {
+		final List<Dependency> configured = new ArrayList<>();
+
+		ConfigurationSection configDeps = config.getConfigurationSection("dependencies");
+		if (configDeps == null) return configured;
+
+
+		Set<String> keys = configDeps.getKeys(false);
+
+		keys.forEach(name -> {
+
+			String  groupId      = configDeps.getString(name + ".group", "");
+			String  version      = configDeps.getString(name + ".version", "");
+			String  artifactId   = configDeps.getString(name + ".artifact", "");
+			String  customRepo   = configDeps.getString(name + ".repository", "");
+			boolean alwaysUpdate = configDeps.getBoolean(name + ".always-update", false);
+			List<String> warmupClasses = configDeps.getStringList(name + ".warmup");
+
+			if (version.isEmpty() || groupId.isEmpty() || artifactId.isEmpty()) {
+				log(Level.SEVERE,
+						" ", " ",
+						blockBar(45),
+						"< ",
+						"< Dependency " + name + " has incomplete details",
+						"< Requires, case-sensitive",
+						"< 'version', 'group', 'artifact'",
+						"< ",
+						blockBar(45),
+						" ", " ");
+			} else {
+				final Dependency dependency = new Dependency(name.toLowerCase(), version, groupId, artifactId, customRepo, alwaysUpdate);
+				dependency.getOptions().setWarmupClasses(warmupClasses);
+
+				configured.add(dependency);
+			}
 		});
+
+		return configured;
+	}
+
+	/**
+	 * Download newer versions of every loaded "always-update" and SNAPSHOT Dependency into the staging folder
+	 * <p>They replace the current files on the next startup</p>
+	 */
+	private void stageUpdates() {
+		dependencies.values().stream().distinct()
+				.filter(dependency -> dependency.getOptions().isAlwaysUpdate() || dependency.getVersion().endsWith("-SNAPSHOT"))
+				.forEach(dependency -> {
+					debug("Checking for updates of " + dependency.getName());
+					Staging.stage(dependency, new File(dependencyFolder, dependency.getGroupId()), new File(stagingFolder, dependency.getGroupId()));
+				});
+	}
+
+	/**
+	 * Remove Jars no server has attached in a while, and keep the Dependencies folder within its cache size
+	 */
+	private void collectGarbage() {
+		debug("Collecting unused Dependencies");
+
+		// declared Dependencies still downloading in the background aren't attached yet, but are in use all the same
+		final Set<String> inUse = Eviction.closureOf(declared, dependencyFolder);
+		inUse.addAll(attachedKeys);
+
+		Eviction.collect(dependencyFolder, inUse, startTime, exclusiveFolder, cacheSize * 1024 * 1024, unusedDays, keepSnapshots);
 	}
 
 	private void loadJar(Dependency dependency, File jarFile) {
+		attachedKeys.add(ArtifactEntry.keyOf(dependency));
+
+		if (!attachedJars.add(jarFile)) {
+			debug(jarFile.getName() + " is already in the ClassLoader");
+			dependencies.putIfAbsent(dependency.getName().toLowerCase(), dependency);
+			return;
+		}
+
 		try {
 			method.invoke(classLoader, jarFile.toURI().toURL());
 			debug("Added " + jarFile.getName() + " to ClassLoader");
+			ArtifactIndex.of(dependencyFolder).touch(dependency);
+			warmup(dependency, jarFile, classLoader);
 			dependencies.put(dependency.getName().toLowerCase(), dependency);
 		} catch (Exception e) {
+			attachedJars.remove(jarFile);
 			log(Level.SEVERE, "Failed to load Jar File " + jarFile.getName());
 			e.printStackTrace();
 		}
 	}
 
-	private String blockArrow(Dependency dependency, String c) {
-		final String generated = Strings.repeat(c, dependency.getParentDepth());
-		return generated.isEmpty() ? c + c + c : generated;
+	/**
+	 * Load the configured and recorded classes of a Jar on the warmup thread, so the main thread doesn't have to
+	 */
+	private void warmup(Dependency dependency, File jarFile, ClassLoader loader) {
+		if (!warmup) return;
+
+		final Set<String> classes = new LinkedHashSet<>(dependency.getOptions().getWarmupClasses());
+		classes.addAll(warmupRecord.getOrDefault(Warmup.keyOf(jarFile), Collections.emptyList()));
+
+		if (classes.isEmpty()) return;
+
+		warmupThread.execute(() -> {
+			final long start = System.nanoTime();
+			final int loaded = Warmup.preload(loader, classes, warmupInitialize);
+
+			debug("Warmed up " + loaded + "/" + classes.size() + " classes of " + jarFile.getName() + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+		});
+	}
+
+	/**
+	 * Remember which classes of a Jar were loaded this run, to warm them up on the next
+	 */
+	private void recordWarmup(File jarFile, ClassLoader loader) {
+		final List<String> loaded = Warmup.findLoaded(loader, jarFile);
+		if (!loaded.isEmpty()) warmupRecord.put(Warmup.keyOf(jarFile), loaded);
+	}
+
+	private void close(Attachment attachment) {
+		try {
+			attachment.close();
+			debug("Closed the ClassLoader of " + attachment.getDependency().getName() + ", no Plugin uses it anymore");
+		} catch (IOException e) {
+			log(Level.WARNING, "Failed to close the ClassLoader of " + attachment.getDependency().getName());
+			e.printStackTrace();
+		}
+	}
+
+	private String formatSize(long bytes) {
+		if (bytes < 0) return "unknown size";
+		if (bytes < 1024) return bytes + " B";
+
+		return bytes < 1024 * 1024 ? String.format("%.1f KB", bytes / 1024.0) : String.format("%.1f MB", bytes / (1024.0 * 1024.0));
 	}
 
 	private String blockBar(int length) {
@@ -239,7 +710,7 @@ public final class DLoader extends JavaPlugin {
 	}
 
 	public static void log(Level level, String... message) {
-		Logger logger = getInstance().getLogger();
+		Logger logger = instance == null ? Logger.getLogger(DLoader.class.getSimpleName()) : instance.getLogger();
 		for (String msgLine : message) logger.log(level, msgLine);
 	}
 
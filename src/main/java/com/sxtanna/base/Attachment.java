@@ -0,0 +1,195 @@
+package com.sxtanna.base;
+
+import com.google.common.base.Objects;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Dependency and its children, loaded into their own ClassLoader on behalf of one or more Plugins
+ * <p>
+ * <p>Unlike Dependencies added to the system ClassLoader, these can be unloaded</p>
+ * <p>Its own Jars come first, so a version loaded into the system ClassLoader can't shadow the attached one</p>
+ * <p>Once the last Plugin using it releases it, the ClassLoader is closed, and its classes can be garbage collected</p>
+ *
+ * @see com.sxtanna.DLoader#attach(org.bukkit.plugin.Plugin, Dependency, java.util.function.Consumer)
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Attachment implements Closeable {
+
+	@NotNull
+	private final Dependency dependency;
+	@NotNull
+	private final List<File> jars;
+	@NotNull
+	private final AttachmentClassLoader classLoader;
+
+	private final Set<String> owners = ConcurrentHashMap.newKeySet();
+
+
+	/**
+	 * Create a new Attachment, opening a ClassLoader over its Jars
+	 *
+	 * @param dependency The Dependency that was attached
+	 * @param jars       The Jar of the Dependency, and those of all its children
+	 * @param parent     The ClassLoader to delegate to, for classes not in these Jars
+	 */
+	public Attachment(@NotNull Dependency dependency, @NotNull Collection<File> jars, @NotNull ClassLoader parent) {
+		this.dependency = dependency;
+		this.jars = Collections.unmodifiableList(new ArrayList<>(jars));
+
+		final List<URL> urls = new ArrayList<>();
+
+		for (File jar : jars) {
+			try {
+				urls.add(jar.toURI().toURL());
+			} catch (MalformedURLException e) {
+				throw new IllegalArgumentException("Invalid Jar path " + jar.getPath(), e);
+			}
+		}
+
+		this.classLoader = new AttachmentClassLoader(urls.toArray(new URL[urls.size()]), parent);
+	}
+
+
+	@NotNull
+	public Dependency getDependency() {
+		return dependency;
+	}
+
+	@NotNull
+	public List<File> getJars() {
+		return jars;
+	}
+
+	/**
+	 * The ClassLoader holding this Dependency's classes
+	 * <p>Plugins should drop every reference to it, and to anything loaded by it, once they release it</p>
+	 *
+	 * @return The ClassLoader
+	 */
+	@NotNull
+	public ClassLoader getClassLoader() {
+		return classLoader;
+	}
+
+	/**
+	 * Names of the Plugins currently using this Attachment
+	 *
+	 * @return The owners
+	 */
+	@NotNull
+	public Set<String> getOwners() {
+		return Collections.unmodifiableSet(owners);
+	}
+
+
+	/**
+	 * Add a Plugin to the users of this Attachment
+	 *
+	 * @param owner The name of the Plugin
+	 * @return How many Plugins now use it
+	 */
+	public int retain(@NotNull String owner) {
+		owners.add(owner);
+		return owners.size();
+	}
+
+	/**
+	 * Remove a Plugin from the users of this Attachment
+	 *
+	 * @param owner The name of the Plugin
+	 * @return How many Plugins still use it, it should be closed at 0
+	 */
+	public int release(@NotNull String owner) {
+		owners.remove(owner);
+		return owners.size();
+	}
+
+	/**
+	 * Close the ClassLoader, releasing its open Jar files
+	 * <p>Classes already loaded keep working, but no new ones can be loaded from it</p>
+	 */
+	@Override
+	public void close() throws IOException {
+		classLoader.close();
+	}
+
+
+	/**
+	 * The ClassLoader of an Attachment, it can tell which of its classes were loaded without reflection
+	 * <p>Classes are looked for in its own Jars before the parent, except for those of the JVM itself</p>
+	 */
+	public static final class AttachmentClassLoader extends URLClassLoader {
+
+		static {
+			registerAsParallelCapable();
+		}
+
+
+		private AttachmentClassLoader(@NotNull URL[] urls, @NotNull ClassLoader parent) {
+			super(urls, parent);
+		}
+
+
+		@Override
+		protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			if (name.startsWith("java.")) return super.loadClass(name, resolve);
+
+			synchronized (getClassLoadingLock(name)) {
+				Class<?> loaded = findLoadedClass(name);
+
+				if (loaded == null) {
+					try {
+						loaded = findClass(name);
+					} catch (ClassNotFoundException e) {
+						return super.loadClass(name, resolve);
+					}
+				}
+
+				if (resolve) resolveClass(loaded);
+				return loaded;
+			}
+		}
+
+		@Override
+		public URL getResource(String name) {
+			final URL resource = findResource(name);
+			return resource != null ? resource : super.getResource(name);
+		}
+
+
+		/**
+		 * Check if a class was already loaded by this ClassLoader
+		 *
+		 * @param className The binary name of the class
+		 * @return Whether it was loaded
+		 */
+		public boolean isLoaded(@NotNull String className) {
+			return findLoadedClass(className) != null;
+		}
+
+	}
+
+
+	@Override
+	public String toString() {
+		return Objects.toStringHelper(this)
+				.add("dependency", dependency.getName())
+				.add("jars", jars.size())
+				.add("owners", owners)
+				.toString();
+	}
+
+}
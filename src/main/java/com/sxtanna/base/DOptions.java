@@ -4,11 +4,19 @@ import com.google.common.base.Objects;
 import com.sxtanna.util.Urls;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
 public final class DOptions {
 
 	@NotNull
 	private String  customRepository;
 	private boolean alwaysUpdate;
+	@NotNull
+	private List<String> warmupClasses = new ArrayList<>();
+	@NotNull
+	private List<String> extraRepositories = new ArrayList<>();
 
 
 	DOptions(@NotNull String customRepository, boolean alwaysUpdate) {
@@ -34,6 +42,35 @@ public final class DOptions {
 		this.alwaysUpdate = alwaysUpdate;
 	}
 
+	/**
+	 * Classes to load in the background right after this Dependency is loaded, when warmup is enabled
+	 *
+	 * @return Binary names of the classes, ie. "kotlin.collections.CollectionsKt"
+	 */
+	@NotNull
+	public List<String> getWarmupClasses() {
+		return warmupClasses;
+	}
+
+	public void setWarmupClasses(@NotNull List<String> warmupClasses) {
+		this.warmupClasses = new ArrayList<>(warmupClasses);
+	}
+
+	/**
+	 * Repositories tried after the shared ones, for this Dependency and its children only
+	 * <p>Ie. those declared in the plugin.yml of the Plugin that declared it, ignored if there is a custom repository</p>
+	 *
+	 * @return The repositories
+	 */
+	@NotNull
+	public List<String> getExtraRepositories() {
+		return extraRepositories;
+	}
+
+	public void setExtraRepositories(@NotNull List<String> extraRepositories) {
+		this.extraRepositories = extraRepositories.stream().map(Urls::fixUrl).collect(Collectors.toList());
+	}
+
 
 	@Override
 	public boolean equals(Object o) {
@@ -54,6 +91,8 @@ public final class DOptions {
 		return Objects.toStringHelper(this)
 				.add("customRepository", getCustomRepository())
 				.add("alwaysUpdate", alwaysUpdate)
+				.add("warmupClasses", warmupClasses)
+				.add("extraRepositories", extraRepositories)
 				.toString();
 	}
 
@@ -0,0 +1,67 @@
+package com.sxtanna.base;
+
+import com.google.common.base.Objects;
+import com.sxtanna.base.PlannedArtifact.Action;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The result of a dry run resolution, every Dependency startup would load and what it would cost
+ *
+ * @see com.sxtanna.DLoader#plan(java.util.Collection)
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Plan {
+
+	@NotNull
+	private final List<PlannedArtifact> artifacts;
+
+
+	public Plan(@NotNull List<PlannedArtifact> artifacts) {
+		this.artifacts = Collections.unmodifiableList(artifacts);
+	}
+
+
+	/**
+	 * Every Dependency in the resolved tree, each only once
+	 *
+	 * @return The artifacts
+	 */
+	@NotNull
+	public List<PlannedArtifact> getArtifacts() {
+		return artifacts;
+	}
+
+	/**
+	 * Every Dependency with this action
+	 *
+	 * @param action The action
+	 * @return The artifacts
+	 */
+	@NotNull
+	public List<PlannedArtifact> getArtifacts(@NotNull Action action) {
+		return artifacts.stream().filter(artifact -> artifact.getAction() == action).collect(Collectors.toList());
+	}
+
+	/**
+	 * Total bytes that would be downloaded, not counting Jars whose size is unknown
+	 *
+	 * @return The total in bytes
+	 */
+	public long getTotalBytes() {
+		return artifacts.stream().mapToLong(PlannedArtifact::getSize).filter(size -> size > 0).sum();
+	}
+
+
+	@Override
+	public String toString() {
+		return Objects.toStringHelper(this)
+				.add("artifacts", artifacts)
+				.add("totalBytes", getTotalBytes())
+				.toString();
+	}
+
+}
@@ -0,0 +1,97 @@
+package com.sxtanna.base;
+
+import com.google.common.base.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A single Dependency in a {@link Plan}, and what startup would have to do to load it
+ */
+@SuppressWarnings("WeakerAccess")
+public final class PlannedArtifact {
+
+	/**
+	 * What loading this Dependency would cost
+	 */
+	public enum Action {
+		/**
+		 * Already downloaded, loaded straight from disk
+		 */
+		CACHED,
+		/**
+		 * Already downloaded, but "always-update" or SNAPSHOT, so repositories are checked for a newer version
+		 */
+		REFRESH,
+		/**
+		 * Already downloaded SNAPSHOT, and the repository's latest build is the one on disk
+		 */
+		UP_TO_DATE,
+		/**
+		 * Not downloaded yet
+		 */
+		DOWNLOAD,
+		/**
+		 * Not downloaded yet, and no repository has it
+		 */
+		MISSING
+	}
+
+
+	@NotNull
+	private final Dependency dependency;
+	@NotNull
+	private final Action     action;
+	@NotNull
+	private final String     repository;
+
+	private final long size;
+
+
+	public PlannedArtifact(@NotNull Dependency dependency, @NotNull Action action, @NotNull String repository, long size) {
+		this.dependency = dependency;
+		this.action = action;
+		this.repository = repository;
+		this.size = size;
+	}
+
+
+	@NotNull
+	public Dependency getDependency() {
+		return dependency;
+	}
+
+	@NotNull
+	public Action getAction() {
+		return action;
+	}
+
+	/**
+	 * The repository the Jar would come from
+	 *
+	 * @return The repository, or an empty String if it's cached or missing
+	 */
+	@NotNull
+	public String getRepository() {
+		return repository;
+	}
+
+	/**
+	 * The size of the Jar that would be downloaded
+	 *
+	 * @return The size in bytes, 0 if nothing would be downloaded, or -1 if the repository didn't say
+	 */
+	public long getSize() {
+		return size;
+	}
+
+
+	@Override
+	public String toString() {
+		return Objects.toStringHelper(this)
+				.add("dependency", dependency)
+				.add("action", action)
+				.add("repository", repository)
+				.add("size", size)
+				.toString();
+	}
+
+}
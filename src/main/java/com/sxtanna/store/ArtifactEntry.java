@@ -0,0 +1,176 @@
+package com.sxtanna.store;
+
+import com.google.common.base.Objects;
+import com.sxtanna.base.Dependency;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Everything the {@link ArtifactIndex} knows about a downloaded Jar
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ArtifactEntry {
+
+	@NotNull
+	private final String groupId, artifactId, version;
+	@NotNull
+	private final String sha1, repository, etag, snapshot;
+
+	private final long size, fetched, lastAttached;
+
+
+	/**
+	 * Create a new ArtifactEntry
+	 *
+	 * @param groupId      The groupId of the Maven Artifact
+	 * @param artifactId   The artifactId of the Maven Artifact
+	 * @param version      The version of the Maven Artifact, as requested, ie. "1.0-SNAPSHOT"
+	 * @param size         The size of the Jar in bytes
+	 * @param sha1         The SHA-1 hash of the Jar
+	 * @param repository   The repository the Jar was downloaded from, empty if unknown
+	 * @param fetched      When the Jar was downloaded, in epoch millis
+	 * @param etag         The ETag the repository sent with the Jar, empty if none
+	 * @param snapshot     The file name of the resolved snapshot build, empty if not a snapshot
+	 * @param lastAttached When the Jar was last added to a ClassLoader, in epoch millis
+	 */
+	public ArtifactEntry(@NotNull String groupId, @NotNull String artifactId, @NotNull String version, long size, @NotNull String sha1, @NotNull String repository, long fetched, @NotNull String etag, @NotNull String snapshot, long lastAttached) {
+		this.groupId = groupId;
+		this.artifactId = artifactId;
+		this.version = version;
+		this.size = size;
+		this.sha1 = sha1;
+		this.repository = repository;
+		this.fetched = fetched;
+		this.etag = etag;
+		this.snapshot = snapshot;
+		this.lastAttached = lastAttached;
+	}
+
+
+	/**
+	 * The key of a Dependency in the index, its group folder and Jar name
+	 *
+	 * @param dependency The Dependency
+	 * @return The key
+	 */
+	public static @NotNull String keyOf(@NotNull Dependency dependency) {
+		return dependency.getGroupId() + '/' + dependency.getJarName();
+	}
+
+	@NotNull
+	public String getKey() {
+		return groupId + '/' + getJarName();
+	}
+
+	@NotNull
+	public String getJarName() {
+		return artifactId + '-' + version + ".jar";
+	}
+
+	@NotNull
+	public String getPomName() {
+		return artifactId + '-' + version + ".pom";
+	}
+
+	public boolean isSnapshot() {
+		return version.endsWith("-SNAPSHOT");
+	}
+
+	/**
+	 * A copy of this entry, marked as attached at a new time
+	 *
+	 * @param lastAttached When the Jar was attached, in epoch millis
+	 * @return The copy
+	 */
+	@NotNull
+	public ArtifactEntry withLastAttached(long lastAttached) {
+		return new ArtifactEntry(groupId, artifactId, version, size, sha1, repository, fetched, etag, snapshot, lastAttached);
+	}
+
+
+	@NotNull
+	public String getGroupId() {
+		return groupId;
+	}
+
+	@NotNull
+	public String getArtifactId() {
+		return artifactId;
+	}
+
+	@NotNull
+	public String getVersion() {
+		return version;
+	}
+
+	public long getSize() {
+		return size;
+	}
+
+	@NotNull
+	public String getSha1() {
+		return sha1;
+	}
+
+	@NotNull
+	public String getRepository() {
+		return repository;
+	}
+
+	public long getFetched() {
+		return fetched;
+	}
+
+	@NotNull
+	public String getEtag() {
+		return etag;
+	}
+
+	@NotNull
+	public String getSnapshot() {
+		return snapshot;
+	}
+
+	public long getLastAttached() {
+		return lastAttached;
+	}
+
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof ArtifactEntry)) return false;
+		ArtifactEntry that = (ArtifactEntry) o;
+		return getSize() == that.getSize() &&
+				getFetched() == that.getFetched() &&
+				getLastAttached() == that.getLastAttached() &&
+				Objects.equal(getGroupId(), that.getGroupId()) &&
+				Objects.equal(getArtifactId(), that.getArtifactId()) &&
+				Objects.equal(getVersion(), that.getVersion()) &&
+				Objects.equal(getSha1(), that.getSha1()) &&
+				Objects.equal(getRepository(), that.getRepository()) &&
+				Objects.equal(getEtag(), that.getEtag()) &&
+				Objects.equal(getSnapshot(), that.getSnapshot());
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hashCode(getGroupId(), getArtifactId(), getVersion(), getSize(), getSha1(), getRepository(), getFetched(), getEtag(), getSnapshot(), getLastAttached());
+	}
+
+	@Override
+	public String toString() {
+		return Objects.toStringHelper(this)
+				.add("groupId", groupId)
+				.add("artifactId", artifactId)
+				.add("version", version)
+				.add("size", size)
+				.add("sha1", sha1)
+				.add("repository", repository)
+				.add("fetched", fetched)
+				.add("etag", etag)
+				.add("snapshot", snapshot)
+				.add("lastAttached", lastAttached)
+				.toString();
+	}
+
+}
@@ -0,0 +1,395 @@
+package com.sxtanna.store;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.sxtanna.DLoader;
+import com.sxtanna.base.Dependency;
+import com.sxtanna.util.Locks;
+import com.sxtanna.util.Xmls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * Index of every Jar in a Dependencies folder, kept in a single memory mapped file
+ * <p>
+ * <p>Replaces checking the file system for each Jar, and the empty marker files snapshots used to leave behind</p>
+ * <p>Once loaded, every lookup is in memory</p>
+ * <p>
+ * <p>The file is only ever replaced whole, under a lock, merging in whatever other servers sharing the folder wrote</p>
+ * <p>If it's missing or corrupt, it's rebuilt by scanning the folder</p>
+ * <p>
+ * <p>Layout, big endian:</p>
+ * <p>int magic, int version, int entry count, long CRC32 of the entries, then the entries</p>
+ * <p>Strings are an unsigned short length followed by UTF-8</p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ArtifactIndex {
+
+	private static final String FILE_NAME = "index.dat";
+
+	private static final int MAGIC = 0x444C4958, VERSION = 1, HEADER = 4 + 4 + 4 + 8;
+
+	private static final Map<File, ArtifactIndex> INDEXES = new ConcurrentHashMap<>();
+
+
+	@NotNull
+	private final File root, indexFile, lockFile;
+
+	private final Map<String, ArtifactEntry> entries = new ConcurrentHashMap<>();
+
+	/**
+	 * Keys changed or removed by this process since the last save
+	 */
+	private final Set<String> dirty = ConcurrentHashMap.newKeySet(), removed = ConcurrentHashMap.newKeySet();
+
+
+	private ArtifactIndex(@NotNull File root) {
+		this.root = root;
+		this.indexFile = new File(root, FILE_NAME);
+		this.lockFile = new File(root, FILE_NAME + ".lock");
+	}
+
+
+	/**
+	 * Get the index of a Dependencies folder, loading it the first time
+	 *
+	 * @param root The root Dependencies folder, that group folders are in
+	 * @return The index
+	 */
+	public static @NotNull ArtifactIndex of(@NotNull File root) {
+		return INDEXES.computeIfAbsent(root.getAbsoluteFile(), file -> {
+			final ArtifactIndex index = new ArtifactIndex(file);
+			index.load();
+
+			return index;
+		});
+	}
+
+	/**
+	 * Drop the loaded index of a Dependencies folder, it's read from disk again the next time it's used
+	 *
+	 * @param root The root Dependencies folder
+	 */
+	public static void forget(@NotNull File root) {
+		INDEXES.remove(root.getAbsoluteFile());
+	}
+
+
+	public @Nullable ArtifactEntry get(@NotNull Dependency dependency) {
+		return entries.get(ArtifactEntry.keyOf(dependency));
+	}
+
+	/**
+	 * Find any cached version of a Dependency's artifact, for when the requested one can't be downloaded in time
+	 *
+	 * @param dependency The Dependency
+	 * @return The most recently attached version, or null if none is cached
+	 */
+	public @Nullable ArtifactEntry getAnyVersion(@NotNull Dependency dependency) {
+		return entries.values().stream()
+				.filter(entry -> entry.getGroupId().equals(dependency.getGroupId()) && entry.getArtifactId().equals(dependency.getArtifactId()))
+				.max(Comparator.comparingLong(ArtifactEntry::getLastAttached))
+				.orElse(null);
+	}
+
+	public boolean contains(@NotNull String key) {
+		return entries.containsKey(key);
+	}
+
+	public @NotNull Collection<ArtifactEntry> getEntries() {
+		return Collections.unmodifiableCollection(entries.values());
+	}
+
+	public synchronized void put(@NotNull ArtifactEntry entry) {
+		entries.put(entry.getKey(), entry);
+
+		removed.remove(entry.getKey());
+		dirty.add(entry.getKey());
+	}
+
+	public synchronized @Nullable ArtifactEntry remove(@NotNull String key) {
+		final ArtifactEntry entry = entries.remove(key);
+		if (entry == null) return null;
+
+		dirty.remove(key);
+		removed.add(key);
+
+		return entry;
+	}
+
+	public @Nullable ArtifactEntry remove(@NotNull Dependency dependency) {
+		return remove(ArtifactEntry.keyOf(dependency));
+	}
+
+
+	/**
+	 * Mark a Dependency's Jar as attached just now, for least recently used eviction
+	 *
+	 * @param dependency The Dependency that was attached
+	 */
+	public void touch(@NotNull Dependency dependency) {
+		final ArtifactEntry entry = get(dependency);
+		if (entry != null) put(entry.withLastAttached(System.currentTimeMillis()));
+	}
+
+
+	/**
+	 * Index a Jar that is already on disk, without knowing where it came from
+	 *
+	 * @param dependency The Dependency the Jar belongs to
+	 * @param jarFile    The Jar
+	 * @param snapshot   The file name of the resolved snapshot build, empty if not a snapshot
+	 * @return The new entry
+	 */
+	public @NotNull ArtifactEntry record(@NotNull Dependency dependency, @NotNull File jarFile, @NotNull String snapshot) throws IOException {
+		final ArtifactEntry entry = new ArtifactEntry(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion(),
+				jarFile.length(), Files.hash(jarFile, Hashing.sha1()).toString(), "", jarFile.lastModified(), "", snapshot, jarFile.lastModified());
+
+		put(entry);
+		return entry;
+	}
+
+
+	/**
+	 * Write every change made by this process to disk, and pick up changes made by others
+	 */
+	public void save() {
+		sync(true);
+	}
+
+	/**
+	 * Pick up changes made by other processes sharing this folder, without writing anything
+	 */
+	public void refresh() {
+		sync(false);
+	}
+
+
+	@SuppressWarnings("ResultOfMethodCallIgnored")
+	private void sync(boolean write) {
+		if (!root.exists()) root.mkdirs();
+
+		try {
+			Locks.withLock(lockFile, () -> {}, () -> {
+				Map<String, ArtifactEntry> onDisk = new HashMap<>();
+
+				try {
+					if (indexFile.exists()) onDisk = read();
+				} catch (IOException | RuntimeException e) {
+					DLoader.debug("Overwriting corrupt artifact index " + indexFile.getPath());
+				}
+
+				final Map<String, ArtifactEntry> merged = onDisk;
+
+				synchronized (this) {
+					removed.forEach(merged::remove);
+					dirty.forEach(key -> {
+						final ArtifactEntry entry = entries.get(key);
+						if (entry != null) merged.put(key, entry);
+					});
+
+					merged.forEach((key, entry) -> {
+						if (!dirty.contains(key)) entries.put(key, entry);
+					});
+
+					if (write) {
+						dirty.clear();
+						removed.clear();
+					}
+				}
+
+				if (write) write(merged.values());
+				return null;
+			});
+		} catch (Exception e) {
+			e.printStackTrace();
+			DLoader.log(Level.SEVERE, "Failed to sync artifact index " + indexFile.getPath());
+		}
+	}
+
+
+	private void load() {
+		if (!indexFile.exists()) {
+			if (hasGroupFolders()) rebuild();
+			return;
+		}
+
+		try {
+			entries.putAll(read());
+			DLoader.debug("Loaded " + entries.size() + " entries from artifact index");
+		} catch (IOException | RuntimeException e) {
+			DLoader.log(Level.WARNING, "Artifact index " + indexFile.getPath() + " is corrupt, rebuilding it (" + e.getMessage() + ")");
+			rebuild();
+		}
+	}
+
+	/**
+	 * Scan every group folder for POMs with a Jar next to them, and index those
+	 */
+	private void rebuild() {
+		entries.clear();
+
+		final File[] groups = root.listFiles(file -> file.isDirectory() && !file.getName().startsWith("."));
+
+		if (groups != null) for (File group : groups) {
+			final File[] poms = group.listFiles((dir, name) -> name.endsWith(".pom"));
+			if (poms == null) continue;
+
+			for (File pom : poms) {
+				final File jar = new File(group, pom.getName().substring(0, pom.getName().length() - ".pom".length()) + ".jar");
+				if (!jar.exists()) continue;
+
+				final String[] coordinates = Xmls.readCoordinates(pom);
+				if (coordinates == null) continue;
+
+				final Dependency dependency = new Dependency(coordinates[1], coordinates[2], group.getName(), coordinates[1]);
+				if (!dependency.getJarName().equals(jar.getName())) continue;
+
+				try {
+					record(dependency, jar, dependency.getVersion().endsWith("-SNAPSHOT") ? findLegacyMarker(group, dependency) : "");
+				} catch (IOException e) {
+					DLoader.log(Level.WARNING, "Failed to index " + jar.getPath());
+				}
+			}
+		}
+
+		DLoader.log(Level.INFO, "Rebuilt artifact index with " + entries.size() + " entries");
+		save();
+	}
+
+	/**
+	 * Snapshots used to leave an empty file named after their latest build, ie. "artifact-1.0-20170401.120000-1"
+	 */
+	private @NotNull String findLegacyMarker(@NotNull File group, @NotNull Dependency dependency) {
+		final String prefix = dependency.getArtifactId() + '-' + dependency.getVersion().replace("SNAPSHOT", "");
+
+		final File[] markers = group.listFiles((dir, name) -> name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d{8}\\.\\d{6}-\\d+"));
+		if (markers == null || markers.length == 0) return "";
+
+		String latest = "";
+		for (File marker : markers) if (marker.getName().compareTo(latest) > 0) latest = marker.getName();
+
+		return latest;
+	}
+
+	private boolean hasGroupFolders() {
+		final File[] groups = root.listFiles(file -> file.isDirectory() && !file.getName().startsWith("."));
+		return groups != null && groups.length > 0;
+	}
+
+
+	private @NotNull Map<String, ArtifactEntry> read() throws IOException {
+		final Map<String, ArtifactEntry> read = new HashMap<>();
+
+		try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+			if (channel.size() < HEADER) throw new IOException("truncated header");
+
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+			if (buffer.getInt() != MAGIC) throw new IOException("bad magic");
+			if (buffer.getInt() != VERSION) throw new IOException("unknown version");
+
+			final int  count = buffer.getInt();
+			final long crc   = buffer.getLong();
+
+			final CRC32 check = new CRC32();
+			// MappedByteBuffer#duplicate only exists since Java 9, built on a newer JDK the call has to go through ByteBuffer
+			check.update(((ByteBuffer) buffer).duplicate());
+
+			if (check.getValue() != crc) throw new IOException("checksum mismatch");
+
+			try {
+				for (int i = 0; i < count; i++) {
+					final String groupId = readString(buffer), artifactId = readString(buffer), version = readString(buffer);
+					final long   size    = buffer.getLong();
+					final String sha1    = readString(buffer), repository = readString(buffer);
+					final long   fetched = buffer.getLong();
+					final String etag    = readString(buffer), snapshot = readString(buffer);
+					final long   attached = buffer.getLong();
+
+					final ArtifactEntry entry = new ArtifactEntry(groupId, artifactId, version, size, sha1, repository, fetched, etag, snapshot, attached);
+
+					read.put(entry.getKey(), entry);
+				}
+			} catch (BufferUnderflowException e) {
+				throw new IOException("truncated entries");
+			}
+		}
+
+		return read;
+	}
+
+	private void write(@NotNull Collection<ArtifactEntry> toWrite) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try (DataOutputStream body = new DataOutputStream(bytes)) {
+			for (ArtifactEntry entry : toWrite) {
+				writeString(body, entry.getGroupId());
+				writeString(body, entry.getArtifactId());
+				writeString(body, entry.getVersion());
+				body.writeLong(entry.getSize());
+				writeString(body, entry.getSha1());
+				writeString(body, entry.getRepository());
+				body.writeLong(entry.getFetched());
+				writeString(body, entry.getEtag());
+				writeString(body, entry.getSnapshot());
+				body.writeLong(entry.getLastAttached());
+			}
+		}
+
+		final byte[] body = bytes.toByteArray();
+
+		final CRC32 crc = new CRC32();
+		crc.update(body);
+
+		final File tempFile = new File(root, FILE_NAME + ".part");
+
+		try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + body.length);
+
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(toWrite.size()).putLong(crc.getValue());
+			buffer.put(body);
+			buffer.force();
+		}
+
+		java.nio.file.Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+
+	private static void writeString(@NotNull DataOutputStream stream, @NotNull String string) throws IOException {
+		final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 0xFFFF) throw new IOException("String too long for index: " + string);
+
+		stream.writeShort(bytes.length);
+		stream.write(bytes);
+	}
+
+	private static @NotNull String readString(@NotNull ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
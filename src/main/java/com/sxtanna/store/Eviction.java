@@ -0,0 +1,236 @@
+package com.sxtanna.store;
+
+import com.sxtanna.DLoader;
+import com.sxtanna.base.Dependency;
+import com.sxtanna.util.Locks;
+import com.sxtanna.util.Xmls;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+
+/**
+ * Cache cleanup Utility class, keeps a Dependencies folder from growing forever
+ * <p> </p>
+ * <p>Jars are removed in four passes, never touching one that is in use:</p>
+ * <p>0. Jars outside of the Dependency tree this server resolved, if no other server uses the folder</p>
+ * <p>1. Jars nothing has attached for longer than the unused period</p>
+ * <p>2. Old SNAPSHOT versions of an artifact, past the retention count</p>
+ * <p>3. The least recently attached Jars, until the folder fits in its budget</p>
+ * <p>
+ * <p>Afterwards, files the {@link ArtifactIndex} doesn't know about are removed, ie. snapshot markers, abandoned downloads and lock files</p>
+ * <p>
+ * <p>A Jar is in use if this server attached it, or any server sharing the folder attached it since this one started</p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Eviction {
+
+	/**
+	 * Empty marker files snapshots used to leave behind, ie. "artifact-1.0-20170401.120000-1"
+	 */
+	private static final Pattern LEGACY_MARKER = Pattern.compile(".+-\\d{8}\\.\\d{6}-\\d+");
+
+
+	/**
+	 * Prevent Instantiation
+	 */
+	private Eviction() {}
+
+
+	/**
+	 * Remove unused Jars from a Dependencies folder
+	 * <p>This does disk I/O, and shouldn't be called from the main thread</p>
+	 *
+	 * @param root          The root Dependencies folder
+	 * @param inUse         Index keys of the Jars this server attached or resolved, see {@link #closureOf(Collection, File)}
+	 * @param since         When this server started, Jars attached after this are in use by some server
+	 * @param exclusive     Whether this server is the only one using the folder, so any Jar not in use can go right away
+	 * @param maxBytes      How large the folder's Jars may get, 0 for no limit
+	 * @param unusedDays    How long a Jar nothing attaches is kept, 0 to keep it forever
+	 * @param keepSnapshots How many SNAPSHOT versions of an artifact to keep
+	 * @return How many bytes were freed
+	 */
+	public static long collect(@NotNull File root, @NotNull Set<String> inUse, long since, boolean exclusive, long maxBytes, int unusedDays, int keepSnapshots) {
+		final ArtifactIndex index = ArtifactIndex.of(root);
+		index.refresh();
+
+		final long now = System.currentTimeMillis(), unusedMillis = TimeUnit.DAYS.toMillis(unusedDays);
+
+		final List<ArtifactEntry> remaining = new ArrayList<>(index.getEntries());
+		final List<ArtifactEntry> evicting  = new ArrayList<>();
+
+		// other servers' trees aren't known, in a shared folder their Jars are left to the unused period
+		if (exclusive) remaining.removeIf(entry -> {
+			if (isInUse(entry, inUse, since)) return false;
+
+			DLoader.debug("Evicting " + entry.getKey() + ", no longer part of the Dependency tree");
+			return evicting.add(entry);
+		});
+
+		remaining.removeIf(entry -> {
+			if (unusedDays <= 0 || isInUse(entry, inUse, since) || now - entry.getLastAttached() < unusedMillis) return false;
+
+			DLoader.debug("Evicting " + entry.getKey() + ", unused for " + TimeUnit.MILLISECONDS.toDays(now - entry.getLastAttached()) + " days");
+			return evicting.add(entry);
+		});
+
+		final Map<String, List<ArtifactEntry>> snapshots = new HashMap<>();
+		remaining.stream().filter(ArtifactEntry::isSnapshot).forEach(entry -> snapshots.computeIfAbsent(entry.getGroupId() + ':' + entry.getArtifactId(), key -> new ArrayList<>()).add(entry));
+
+		snapshots.values().forEach(versions -> {
+			versions.sort(Comparator.comparingLong(ArtifactEntry::getLastAttached).reversed());
+
+			for (int i = Math.max(0, keepSnapshots); i < versions.size(); i++) {
+				final ArtifactEntry entry = versions.get(i);
+				if (isInUse(entry, inUse, since)) continue;
+
+				DLoader.debug("Evicting " + entry.getKey() + ", past the " + keepSnapshots + " newest SNAPSHOT versions");
+				remaining.remove(entry);
+				evicting.add(entry);
+			}
+		});
+
+		if (maxBytes > 0) {
+			long total = remaining.stream().mapToLong(ArtifactEntry::getSize).sum();
+
+			remaining.sort(Comparator.comparingLong(ArtifactEntry::getLastAttached));
+
+			for (ArtifactEntry entry : remaining) {
+				if (total <= maxBytes) break;
+				if (isInUse(entry, inUse, since)) continue;
+
+				DLoader.debug("Evicting " + entry.getKey() + ", least recently attached");
+				evicting.add(entry);
+				total -= entry.getSize();
+			}
+
+			if (total > maxBytes) DLoader.log(Level.WARNING, "Dependencies in use take up " + (total / 1024 / 1024) + "MB, more than the cache size allows");
+		}
+
+		long freed = 0;
+		for (ArtifactEntry entry : evicting) freed += evict(root, index, entry);
+
+		freed += removeStrays(root, index, now - Math.max(unusedMillis, TimeUnit.DAYS.toMillis(1)));
+
+		index.save();
+
+		if (freed > 0) DLoader.log(Level.INFO, "Freed " + (freed / 1024) + "KB from the Dependencies folder, evicted " + evicting.size() + " Jars");
+		return freed;
+	}
+
+
+	/**
+	 * Every index key in the trees of these Dependencies, as far as their POMs are on disk
+	 *
+	 * @param roots The declared Dependencies
+	 * @param root  The root Dependencies folder
+	 * @return Index keys of the roots and all of their children
+	 */
+	public static @NotNull Set<String> closureOf(@NotNull Collection<Dependency> roots, @NotNull File root) {
+		final Set<String> closure = new HashSet<>();
+		roots.forEach(dependency -> walk(dependency, root, closure));
+
+		return closure;
+	}
+
+
+	private static void walk(@NotNull Dependency dependency, @NotNull File root, @NotNull Set<String> closure) {
+		if (!closure.add(ArtifactEntry.keyOf(dependency))) return;
+
+		final File pom = new File(new File(root, dependency.getGroupId()), dependency.getPomName());
+		if (pom.exists()) Xmls.readChildren(dependency, pom).forEach(child -> walk(child, root, closure));
+	}
+
+	private static boolean isInUse(@NotNull ArtifactEntry entry, @NotNull Set<String> inUse, long since) {
+		return inUse.contains(entry.getKey()) || entry.getLastAttached() >= since;
+	}
+
+	/**
+	 * Delete an entry's files under its lock, and drop it from the index if they're gone
+	 */
+	private static long evict(@NotNull File root, @NotNull ArtifactIndex index, @NotNull ArtifactEntry entry) {
+		final File group = new File(root, entry.getGroupId());
+		final File jar   = new File(group, entry.getJarName()), pom = new File(group, entry.getPomName());
+		final File meta  = new File(group, entry.getArtifactId() + "-" + entry.getVersion() + "-meta.xml");
+
+		try {
+			return Locks.withLock(new File(group, entry.getJarName() + ".lock"), () -> {}, () -> {
+				final long size = jar.length() + pom.length();
+
+				// a Jar held open by another process can't always be deleted, try again next time
+				if (jar.exists() && !jar.delete()) return 0L;
+
+				FileUtils.deleteQuietly(pom);
+				FileUtils.deleteQuietly(meta);
+
+				index.remove(entry.getKey());
+				return size;
+			});
+		} catch (Exception e) {
+			DLoader.log(Level.WARNING, "Failed to evict " + entry.getKey() + " (" + e.getMessage() + ")");
+			return 0;
+		}
+	}
+
+	/**
+	 * Delete files in group folders the index doesn't account for
+	 * <p>Anything but snapshot markers is only deleted once older than the cutoff, another process may still be writing it</p>
+	 * <p>Lock files are rewritten whenever they're taken, so an old one of an artifact that isn't indexed isn't being used</p>
+	 */
+	private static long removeStrays(@NotNull File root, @NotNull ArtifactIndex index, long cutoff) {
+		final File[] groups = root.listFiles(file -> file.isDirectory() && !file.getName().startsWith("."));
+		if (groups == null) return 0;
+
+		long freed = 0;
+
+		for (File group : groups) {
+			final File[] files = group.listFiles(File::isFile);
+			if (files == null) continue;
+
+			for (File file : files) {
+				final String name = file.getName();
+				final boolean stray;
+
+				if (LEGACY_MARKER.matcher(name).matches()) {
+					stray = true;
+				} else if (file.lastModified() >= cutoff) {
+					stray = false;
+				} else if (name.endsWith(".jar.lock")) {
+					stray = !isIndexed(index, group, name.substring(0, name.length() - ".jar.lock".length()));
+				} else if (name.endsWith("-meta.xml")) {
+					stray = !isIndexed(index, group, name.substring(0, name.length() - "-meta.xml".length()));
+				} else if (name.endsWith(".jar") || name.endsWith(".pom")) {
+					stray = !isIndexed(index, group, name.substring(0, name.length() - ".jar".length()));
+				} else {
+					stray = name.endsWith(".part");
+				}
+
+				if (!stray) continue;
+
+				final long size = file.length();
+				if (file.delete()) {
+					DLoader.debug("Removed stray file " + group.getName() + '/' + name);
+					freed += size;
+				}
+			}
+		}
+
+		return freed;
+	}
+
+	private static boolean isIndexed(@NotNull ArtifactIndex index, @NotNull File group, @NotNull String baseName) {
+		return index.contains(group.getName() + '/' + baseName + ".jar");
+	}
+
+}
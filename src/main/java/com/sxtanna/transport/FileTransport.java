@@ -0,0 +1,101 @@
+package com.sxtanna.transport;
+
+import com.sxtanna.DLoader;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link Transport} for Repositories on a local or network mounted disk, like a mirror of Central
+ * <p>
+ * <p>Accepts both "file:" URLs and plain directory paths</p>
+ * <p>Files are hard linked when the mirror is on the same file system, so nothing is copied at all</p>
+ * <p>Otherwise they are copied with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, leaving the copy to the kernel</p>
+ */
+public final class FileTransport implements Transport {
+
+	/**
+	 * Pairs of source and destination file systems a hard link failed between
+	 * <p>Each pair is only tried once, a failure between two of them says nothing about any other</p>
+	 */
+	private final Set<List<FileStore>> unlinkable = ConcurrentHashMap.newKeySet();
+
+
+	@Override
+	public @NotNull InputStream open(@NotNull String url) throws IOException {
+		return Files.newInputStream(resolve(url));
+	}
+
+	@Override
+	public long size(@NotNull String url) throws IOException {
+		return Files.size(resolve(url));
+	}
+
+	@Override
+	public @NotNull String fetch(@NotNull String url, @NotNull File target) throws IOException {
+		final Path source = resolve(url), destination = target.toPath();
+
+		Files.deleteIfExists(destination);
+		if (destination.getParent() != null) Files.createDirectories(destination.getParent());
+
+		final List<FileStore> stores = Arrays.asList(Files.getFileStore(source), Files.getFileStore(destination.toAbsolutePath().getParent()));
+
+		if (!unlinkable.contains(stores)) {
+			try {
+				Files.createLink(destination, source);
+				return "";
+			} catch (IOException | UnsupportedOperationException e) {
+				// most likely different file systems, no point trying between these two again
+				DLoader.debug("Can't hard link from " + source.getParent() + ", copying instead");
+				unlinkable.add(stores);
+			}
+		}
+
+		try (FileChannel from = FileChannel.open(source, StandardOpenOption.READ);
+		     FileChannel to = FileChannel.open(destination, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+
+			final long size = from.size();
+			long position = 0;
+
+			while (position < size) {
+				final long transferred = from.transferTo(position, size - position, to);
+				if (transferred <= 0) throw new IOException("Copy of " + source + " stopped at " + position + " of " + size + " bytes");
+
+				position += transferred;
+			}
+		}
+
+		return "";
+	}
+
+
+	private static @NotNull Path resolve(@NotNull String url) throws IOException {
+		final Path path;
+
+		try {
+			path = url.startsWith("file:") ? Paths.get(URI.create(url)) : Paths.get(url);
+		} catch (IllegalArgumentException | FileSystemNotFoundException e) {
+			throw new IOException("Invalid file repository url " + url, e);
+		}
+
+		if (!Files.isRegularFile(path)) throw new FileNotFoundException(url);
+
+		return path;
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.sxtanna.transport;
+
+import com.sxtanna.util.Deadline;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The default {@link Transport}, for "http" and "https" Repositories
+ * <p>
+ * <p>Every connection has a connect and read timeout, so a Repository that stalls can't hang the server</p>
+ * <p>Both are cut short by the calling thread's {@link Deadline}, which is also checked while copying</p>
+ */
+public final class HttpTransport implements Transport {
+
+	private final int connectTimeout, readTimeout;
+
+
+	/**
+	 * Create an HttpTransport with a 10 second connect timeout and 30 second read timeout
+	 */
+	public HttpTransport() {
+		this((int) TimeUnit.SECONDS.toMillis(10), (int) TimeUnit.SECONDS.toMillis(30));
+	}
+
+	/**
+	 * Create an HttpTransport
+	 *
+	 * @param connectTimeout Millis to wait for a connection, 0 for infinite
+	 * @param readTimeout    Millis to wait for each read, 0 for infinite
+	 */
+	public HttpTransport(int connectTimeout, int readTimeout) {
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+
+	@Override
+	public @NotNull InputStream open(@NotNull String url) throws IOException {
+		return connect(url).getInputStream();
+	}
+
+	@Override
+	public long size(@NotNull String url) throws IOException {
+		final URLConnection connection = connect(url);
+		if (!(connection instanceof HttpURLConnection)) return Transport.super.size(url);
+
+		final HttpURLConnection http = (HttpURLConnection) connection;
+
+		try {
+			http.setRequestMethod("HEAD");
+
+			if (http.getResponseCode() >= 400) throw new FileNotFoundException(url);
+
+			return http.getContentLengthLong();
+		} finally {
+			http.disconnect();
+		}
+	}
+
+	@Override
+	public @NotNull String fetch(@NotNull String url, @NotNull File target) throws IOException {
+		final URLConnection connection = connect(url);
+
+		try (InputStream stream = connection.getInputStream(); OutputStream output = FileUtils.openOutputStream(target)) {
+			final byte[] buffer = new byte[8192];
+			int read;
+
+			// read timeouts only cover a single read, a Repository trickling bytes is caught by the deadline
+			while ((read = stream.read(buffer)) != -1) {
+				output.write(buffer, 0, read);
+				Deadline.check(url);
+			}
+		}
+
+		final String etag = connection.getHeaderField("ETag");
+		return etag == null ? "" : etag;
+	}
+
+
+	private @NotNull URLConnection connect(@NotNull String url) throws IOException {
+		Deadline.check(url);
+
+		final URLConnection connection = new URL(url).openConnection();
+		connection.setConnectTimeout(Deadline.limit(connectTimeout));
+		connection.setReadTimeout(Deadline.limit(readTimeout));
+
+		return connection;
+	}
+
+}
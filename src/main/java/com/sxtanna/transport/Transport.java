@@ -0,0 +1,49 @@
+package com.sxtanna.transport;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Moves files from a Repository to the local disk
+ * <p>
+ * <p>Implementations are picked by the scheme of the Repository URL, see {@link Transports}</p>
+ */
+public interface Transport {
+
+	/**
+	 * Open a stream to a small file in the Repository, like a ".sha1" or "maven-metadata.xml"
+	 *
+	 * @param url The full URL of the file
+	 * @return The stream, closed by the caller
+	 * @throws IOException If the file doesn't exist or can't be reached
+	 */
+	@NotNull InputStream open(@NotNull String url) throws IOException;
+
+	/**
+	 * Copy a file from the Repository to the local disk
+	 *
+	 * @param url    The full URL of the file
+	 * @param target The local file, replaced if it exists
+	 * @return The ETag of the file, or an empty String if the Repository has none
+	 * @throws IOException If the file doesn't exist, can't be reached, or was only partially copied
+	 */
+	@NotNull String fetch(@NotNull String url, @NotNull File target) throws IOException;
+
+	/**
+	 * Find the size of a file in the Repository without copying it
+	 * <p>By default this only checks that the file exists</p>
+	 *
+	 * @param url The full URL of the file
+	 * @return The size in bytes, or -1 if unknown
+	 * @throws IOException If the file doesn't exist or can't be reached
+	 */
+	default long size(@NotNull String url) throws IOException {
+		try (InputStream ignored = open(url)) {
+			return -1;
+		}
+	}
+
+}
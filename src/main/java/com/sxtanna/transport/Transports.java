@@ -0,0 +1,75 @@
+package com.sxtanna.transport;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of every {@link Transport}, by URL scheme
+ * <p> </p>
+ * <p>"http" and "https" use {@link HttpTransport}</p>
+ * <p>"file" and plain paths without a scheme use {@link FileTransport}</p>
+ * <p>Other plugins can register their own with {@link Transports#register(String, Transport)}</p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Transports {
+
+	private static final String FILE = "file";
+
+	private static final Map<String, Transport> TRANSPORTS = new ConcurrentHashMap<>();
+
+	static {
+		final HttpTransport http = new HttpTransport();
+
+		register("http", http);
+		register("https", http);
+		register(FILE, new FileTransport());
+	}
+
+
+	/**
+	 * Prevent Instantiation
+	 */
+	private Transports() {}
+
+
+	/**
+	 * Register a Transport for a URL scheme, replacing any existing one
+	 *
+	 * @param scheme    The scheme, ie. "ftp"
+	 * @param transport The Transport
+	 */
+	public static void register(@NotNull String scheme, @NotNull Transport transport) {
+		TRANSPORTS.put(scheme.toLowerCase(Locale.ROOT), transport);
+	}
+
+	/**
+	 * Get the Transport for this URL
+	 *
+	 * @param url The URL, or a plain path
+	 * @return The Transport for its scheme
+	 * @throws IllegalArgumentException If no Transport is registered for its scheme
+	 */
+	public static @NotNull Transport forUrl(@NotNull String url) {
+		final Transport transport = TRANSPORTS.get(getScheme(url));
+		if (transport == null) throw new IllegalArgumentException("No transport registered for url " + url);
+
+		return transport;
+	}
+
+
+	private static @NotNull String getScheme(@NotNull String url) {
+		final int index = url.indexOf(':');
+
+		// no scheme, or a windows drive letter
+		if (index <= 1) return FILE;
+
+		final String scheme = url.substring(0, index);
+		for (char c : scheme.toCharArray()) if (!Character.isLetterOrDigit(c) && c != '+' && c != '-' && c != '.') return FILE;
+
+		return scheme.toLowerCase(Locale.ROOT);
+	}
+
+}
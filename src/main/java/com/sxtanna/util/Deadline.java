@@ -0,0 +1,111 @@
+package com.sxtanna.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * Deadline Utility class, bounds how long repository I/O on a thread may take
+ * <p> </p>
+ * <p>Each thread has at most one deadline, nested ones can only bring it closer</p>
+ * <p>Transports and lock waits check it, and fail with an {@link IOException} once it passes</p>
+ * <p>Threads that never set one wait as long as their timeouts allow</p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Deadline {
+
+	private static final long NONE = Long.MAX_VALUE;
+
+	private static final ThreadLocal<Long> CURRENT = ThreadLocal.withInitial(() -> NONE);
+
+
+	/**
+	 * Prevent Instantiation
+	 */
+	private Deadline() {}
+
+
+	/**
+	 * Run a block of code with a deadline on this thread, keeping any earlier one
+	 *
+	 * @param deadline When the block has to be done by, in epoch millis
+	 * @param block    The block of code
+	 * @return The result of the block
+	 * @throws Exception If the block failed
+	 */
+	public static <T> T within(long deadline, @NotNull Callable<T> block) throws Exception {
+		final long previous = CURRENT.get();
+		CURRENT.set(Math.min(previous, deadline));
+
+		try {
+			return block.call();
+		} finally {
+			CURRENT.set(previous);
+		}
+	}
+
+	/**
+	 * Add a number of milliseconds to now, without overflowing
+	 *
+	 * @param millis The time budget, 0 or less for none
+	 * @return The deadline, in epoch millis
+	 */
+	public static long after(long millis) {
+		return millis <= 0 ? NONE : System.currentTimeMillis() + millis;
+	}
+
+
+	/**
+	 * Whether this thread has a deadline at all
+	 *
+	 * @return True if one is set
+	 */
+	public static boolean isSet() {
+		return CURRENT.get() != NONE;
+	}
+
+	/**
+	 * Whether this thread's deadline has passed
+	 *
+	 * @return True if it has
+	 */
+	public static boolean isPassed() {
+		return remaining() <= 0;
+	}
+
+	/**
+	 * How long this thread has left
+	 *
+	 * @return Milliseconds left, {@link Long#MAX_VALUE} if there is no deadline
+	 */
+	public static long remaining() {
+		final long deadline = CURRENT.get();
+		return deadline == NONE ? NONE : deadline - System.currentTimeMillis();
+	}
+
+	/**
+	 * Shorten a socket timeout so it can't outlast this thread's deadline
+	 *
+	 * @param timeout The configured timeout in millis, 0 for infinite
+	 * @return The timeout to use, never 0 while a deadline is set
+	 */
+	public static int limit(int timeout) {
+		final long remaining = remaining();
+		if (remaining == NONE) return timeout;
+
+		final long limited = timeout <= 0 ? remaining : Math.min(timeout, remaining);
+		return (int) Math.max(1, Math.min(Integer.MAX_VALUE, limited));
+	}
+
+	/**
+	 * Fail if this thread's deadline has passed
+	 *
+	 * @param what What was being waited on, for the message
+	 * @throws IOException If it has
+	 */
+	public static void check(@NotNull String what) throws IOException {
+		if (isPassed()) throw new IOException("Deadline passed while waiting on " + what);
+	}
+
+}
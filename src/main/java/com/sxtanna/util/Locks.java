@@ -0,0 +1,163 @@
+package com.sxtanna.util;
+
+import com.sxtanna.DLoader;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+
+/**
+ * File Lock Utility class, keeps multiple servers sharing a Dependencies folder from stepping on each other
+ * <p> </p>
+ * <p>Locks are held on a small ".lock" file next to the artifact, using {@link FileChannel#lock()}</p>
+ * <p>The holder writes its process name into the file while working, and clears it when done</p>
+ * <p>If the lock is acquired and the file still names a holder, that process died mid operation, and the lock is stale</p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Locks {
+
+	/**
+	 * Name of this process, in the form of "pid@host"
+	 */
+	private static final String OWNER = ManagementFactory.getRuntimeMXBean().getName();
+
+	/**
+	 * How long to wait for another process before giving up, and how often to check
+	 */
+	private static final long MAX_WAIT = TimeUnit.MINUTES.toMillis(5), POLL_WAIT = 100;
+
+	/**
+	 * File locks are held by the whole JVM, threads in this one have to queue up separately
+	 * <p>Entries are removed once no thread holds or waits on them</p>
+	 */
+	private static final Map<String, LocalLock> LOCAL_LOCKS = new ConcurrentHashMap<>();
+
+
+	/**
+	 * Prevent Instantiation
+	 */
+	private Locks() {}
+
+
+	/**
+	 * Run a block of code while holding the lock on a file, waiting for any other process holding it
+	 *
+	 * @param lockFile The lock file, created if it doesn't exist
+	 * @param recover  Ran before the block if the previous holder of this lock never released it
+	 * @param block    The block of code to run while holding the lock
+	 * @return The result of the block
+	 * @throws Exception If the lock couldn't be acquired, or the block failed
+	 */
+	public static <T> T withLock(@NotNull File lockFile, @NotNull Runnable recover, @NotNull Callable<T> block) throws Exception {
+		final String path = lockFile.getAbsolutePath();
+
+		// counted inside compute, so an entry can't be removed between another thread getting it and locking it
+		final LocalLock localLock = LOCAL_LOCKS.compute(path, (key, current) -> {
+			final LocalLock local = current == null ? new LocalLock() : current;
+			local.users++;
+
+			return local;
+		});
+
+		try {
+			if (!localLock.lock.tryLock(Math.min(MAX_WAIT, Math.max(0, Deadline.remaining())), TimeUnit.MILLISECONDS)) {
+				throw new IOException("Timed out waiting for lock " + lockFile.getName());
+			}
+
+			try (RandomAccessFile access = new RandomAccessFile(lockFile, "rw"); FileChannel channel = access.getChannel()) {
+				final FileLock lock = acquire(lockFile, channel);
+
+				try {
+					final String previous = readOwner(channel);
+
+					if (!previous.isEmpty()) {
+						DLoader.log(Level.WARNING, "Recovering stale lock " + lockFile.getName() + " left behind by " + previous);
+						recover.run();
+					}
+
+					writeOwner(channel, OWNER + ' ' + System.currentTimeMillis());
+
+					try {
+						return block.call();
+					} finally {
+						// a failed block still released the lock properly, only a dead process leaves its name behind
+						writeOwner(channel, "");
+					}
+				} finally {
+					lock.release();
+				}
+			} finally {
+				localLock.lock.unlock();
+			}
+		} finally {
+			LOCAL_LOCKS.compute(path, (key, current) -> --current.users == 0 ? null : current);
+		}
+	}
+
+
+	private static @NotNull FileLock acquire(@NotNull File lockFile, @NotNull FileChannel channel) throws IOException {
+		FileLock lock = channel.tryLock();
+		if (lock != null) return lock;
+
+		DLoader.debug("Waiting for another process to release " + lockFile.getName());
+
+		final long giveUpAt = System.currentTimeMillis() + MAX_WAIT;
+
+		while (System.currentTimeMillis() < giveUpAt) {
+			try {
+				Thread.sleep(POLL_WAIT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted waiting for lock " + lockFile.getName(), e);
+			}
+
+			lock = channel.tryLock();
+			if (lock != null) return lock;
+
+			Deadline.check("lock " + lockFile.getName());
+		}
+
+		throw new IOException("Timed out waiting for lock " + lockFile.getName());
+	}
+
+	private static @NotNull String readOwner(@NotNull FileChannel channel) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), 256));
+		channel.read(buffer, 0);
+
+		return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).trim();
+	}
+
+	/**
+	 * The lock threads in this JVM queue up on, and how many of them are using it
+	 */
+	private static final class LocalLock {
+
+		private final ReentrantLock lock = new ReentrantLock();
+
+		/**
+		 * Only changed inside {@link Map#compute}
+		 */
+		private int users;
+
+	}
+
+
+	private static void writeOwner(@NotNull FileChannel channel, @NotNull String owner) throws IOException {
+		channel.truncate(0);
+		channel.write(ByteBuffer.wrap(owner.getBytes(StandardCharsets.UTF_8)), 0);
+		channel.force(false);
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.sxtanna.util;
+
+import com.sxtanna.DLoader;
+import com.sxtanna.base.Dependency;
+import com.sxtanna.base.Plan;
+import com.sxtanna.base.PlannedArtifact;
+import com.sxtanna.base.PlannedArtifact.Action;
+import com.sxtanna.store.ArtifactEntry;
+import com.sxtanna.store.ArtifactIndex;
+import com.sxtanna.transport.Transports;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * Dry run resolution Utility class, works out what loading a set of Dependencies would cost without loading them
+ * <p> </p>
+ * <p>The tree is walked the same way {@link DLoader#load(Dependency)} walks it, using {@link Xmls#readChildren(Dependency, File)}</p>
+ * <p>POM files already downloaded are read from disk, missing ones are downloaded to a temporary folder</p>
+ * <p>Jars are never downloaded, their size is asked of the repository instead, ie. with an HTTP HEAD request</p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Planner {
+
+	/**
+	 * Prevent Instantiation
+	 */
+	private Planner() {}
+
+
+	/**
+	 * Resolve the full tree of these Dependencies, without downloading any Jars
+	 *
+	 * @param roots            The Dependencies that would be loaded
+	 * @param dependencyFolder The root Dependencies folder
+	 * @return The Plan, with every Dependency in the tree once
+	 */
+	public static @NotNull Plan plan(@NotNull Collection<Dependency> roots, @NotNull File dependencyFolder) {
+		final List<PlannedArtifact> artifacts = new ArrayList<>();
+
+		File scratch = null;
+
+		try {
+			scratch = Files.createTempDirectory("dloader-plan").toFile();
+
+			final Set<Dependency> visited = new HashSet<>();
+			for (Dependency root : roots) plan(root, dependencyFolder, scratch, visited, artifacts);
+
+		} catch (IOException e) {
+			e.printStackTrace();
+			DLoader.log(Level.SEVERE, "Failed to create a folder for planning");
+		} finally {
+			if (scratch != null) FileUtils.deleteQuietly(scratch);
+		}
+
+		return new Plan(artifacts);
+	}
+
+
+	private static void plan(@NotNull Dependency dependency, @NotNull File root, @NotNull File scratch, @NotNull Set<Dependency> visited, @NotNull List<PlannedArtifact> artifacts) {
+		if (!visited.add(dependency)) return;
+
+		File pomFile = new File(new File(root, dependency.getGroupId()), dependency.getPomName());
+
+		final boolean isSnapShot = dependency.getVersion().endsWith("-SNAPSHOT");
+		final boolean alwaysUpdate = dependency.getOptions().isAlwaysUpdate();
+		final boolean refreshes    = !Urls.isPreferringLocal() && (isSnapShot || alwaysUpdate);
+
+		final ArtifactEntry entry  = ArtifactIndex.of(root).get(dependency);
+		final boolean       cached = entry != null;
+
+		if (cached && !refreshes) {
+			artifacts.add(new PlannedArtifact(dependency, Action.CACHED, "", 0));
+		} else {
+			final File scratchFolder = new File(scratch, dependency.getGroupId());
+
+			try {
+				final String fileName = isSnapShot ? Urls.readLatestSnapshotName(dependency, scratchFolder) : dependency.getArtifactId() + "-" + dependency.getVersion();
+				final String jarUrl   = Urls.getBaseUrl(dependency) + fileName + ".jar";
+
+				// the same check loading does, a cached SNAPSHOT is only downloaded again if there is a newer build
+				final PlannedArtifact artifact;
+
+				if (cached && isSnapShot && !alwaysUpdate && entry.getSnapshot().equals(fileName)) {
+					artifact = new PlannedArtifact(dependency, Action.UP_TO_DATE, "", 0);
+				} else {
+					artifact = locate(dependency, jarUrl, cached ? Action.REFRESH : Action.DOWNLOAD);
+				}
+
+				artifacts.add(artifact);
+
+				if (!pomFile.exists() && artifact.getAction() != Action.MISSING) {
+					pomFile = new File(scratchFolder, dependency.getPomName());
+					Urls.tryDownload(Urls.getBaseUrl(dependency) + fileName + ".pom", pomFile, dependency.getOptions());
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+				DLoader.log(Level.SEVERE, "Failed to plan dependency " + dependency.getName());
+			}
+		}
+
+		if (!pomFile.exists()) return;
+
+		Xmls.readChildren(dependency, pomFile).forEach(child -> plan(child, root, scratch, visited, artifacts));
+	}
+
+	private static @NotNull PlannedArtifact locate(@NotNull Dependency dependency, @NotNull String jarUrl, @NotNull Action action) {
+		for (String repository : Urls.getRepositories(dependency.getOptions())) {
+			final String url = repository + jarUrl;
+
+			try {
+				return new PlannedArtifact(dependency, action, repository, Transports.forUrl(url).size(url));
+			} catch (IOException e) {
+				DLoader.debug("Repo '" + repository + "' doesn't have " + jarUrl);
+			}
+		}
+
+		return new PlannedArtifact(dependency, Action.MISSING, "", 0);
+	}
+
+}
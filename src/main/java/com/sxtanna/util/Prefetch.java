@@ -0,0 +1,85 @@
+package com.sxtanna.util;
+
+import com.sxtanna.DLoader;
+import com.sxtanna.base.Dependency;
+import com.sxtanna.store.ArtifactEntry;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Parallel resolution Utility class, downloads a whole Dependency graph before any of it is loaded
+ * <p> </p>
+ * <p>The graph is walked across a pool of threads, each artifact is only fetched once however many Dependencies share it</p>
+ * <p>Nothing is added to a ClassLoader here, loading afterwards finds every file already downloaded and indexed</p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Prefetch {
+
+	/**
+	 * Prevent Instantiation
+	 */
+	private Prefetch() {}
+
+
+	/**
+	 * Download every Dependency in the graph of these roots, and wait for it to finish
+	 * <p>Waits no longer than this thread's {@link Deadline}, fetches still running after that continue in the background</p>
+	 *
+	 * @param roots            The Dependencies to resolve, duplicates are fine
+	 * @param dependencyFolder The root Dependencies folder
+	 * @param executor         The threads to download with
+	 * @return How many distinct artifacts were in the graph, as far as it was resolved
+	 */
+	public static int prefetch(@NotNull Collection<Dependency> roots, @NotNull File dependencyFolder, @NotNull Executor executor) {
+		final Set<String>             visited = ConcurrentHashMap.newKeySet();
+		final CompletableFuture<Void> done    = new CompletableFuture<>();
+
+		// starts at one for this thread, so the graph can't look finished before every root is submitted
+		final AtomicInteger pending = new AtomicInteger(1);
+
+		for (Dependency root : roots) submit(root, dependencyFolder, executor, visited, pending, done);
+		if (pending.decrementAndGet() == 0) done.complete(null);
+
+		try {
+			done.get(Math.min(Deadline.remaining(), TimeUnit.DAYS.toMillis(1)), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			DLoader.log(Level.WARNING, "Out of time resolving Dependencies, " + pending.get() + " downloads continue in the background");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		return visited.size();
+	}
+
+
+	private static void submit(@NotNull Dependency dependency, @NotNull File root, @NotNull Executor executor, @NotNull Set<String> visited, @NotNull AtomicInteger pending, @NotNull CompletableFuture<Void> done) {
+		if (!visited.add(ArtifactEntry.keyOf(dependency))) return;
+
+		pending.incrementAndGet();
+
+		executor.execute(() -> {
+			try {
+				Urls.download(dependency, new File(root, dependency.getGroupId()), (jar, pom) -> {
+					if (pom.exists()) Xmls.readChildren(dependency, pom).forEach(child -> submit(child, root, executor, visited, pending, done));
+				});
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+			} finally {
+				if (pending.decrementAndGet() == 0) done.complete(null);
+			}
+		});
+	}
+
+}
@@ -0,0 +1,177 @@
+package com.sxtanna.util;
+
+import com.google.common.base.Strings;
+import com.sxtanna.DLoader;
+import com.sxtanna.base.DOptions;
+import com.sxtanna.base.Dependency;
+import com.sxtanna.store.ArtifactEntry;
+import com.sxtanna.store.ArtifactIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+
+/**
+ * Walks the tree of a Dependency, downloading each one and handing its Jar to whoever attaches it
+ * <p> </p>
+ * <p>This is the load path of {@link DLoader#load(Dependency)} and {@link DLoader#attach}, without touching a ClassLoader</p>
+ * <p>It needs no server, so the startup benchmark measures exactly what a server runs</p>
+ * <p>
+ * <p>On the startup thread, resolving is bounded by the startup deadline</p>
+ * <p>Once that passes, cached versions are used where possible, and everything else finishes in the background</p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Resolver {
+
+	@NotNull
+	private final File     dependencyFolder;
+	@NotNull
+	private final Executor background;
+
+	@Nullable
+	private volatile Thread startupThread;
+	private volatile long   startupDeadline;
+
+
+	/**
+	 * Create a new Resolver
+	 *
+	 * @param dependencyFolder The root Dependencies folder
+	 * @param background       The threads that finish loading what ran out of time
+	 */
+	public Resolver(@NotNull File dependencyFolder, @NotNull Executor background) {
+		this.dependencyFolder = dependencyFolder;
+		this.background = background;
+	}
+
+
+	/**
+	 * Bound resolving on a thread by a deadline, for as long as startup lasts
+	 *
+	 * @param thread   The thread starting the server, or null once startup is over
+	 * @param deadline When startup has to be done downloading, in epoch millis
+	 */
+	public void setStartup(@Nullable Thread thread, long deadline) {
+		this.startupDeadline = deadline;
+		this.startupThread = thread;
+	}
+
+
+	/**
+	 * Resolve a Dependency and all of its children
+	 *
+	 * @param dependency The Dependency
+	 * @param attach     Given every Dependency in the tree with its Jar, children after their parent
+	 * @param whenDone   Ran once the whole tree is attached
+	 *                   <p>If the startup thread ran out of time, this runs later, on a background thread</p>
+	 */
+	public void resolve(@NotNull Dependency dependency, @NotNull BiConsumer<Dependency, File> attach, @NotNull Runnable whenDone) {
+		resolve(dependency, attach, whenDone, false);
+	}
+
+
+	/**
+	 * @param retried Whether the files of this Dependency were already found missing and downloaded again, it's only tried once
+	 */
+	private void resolve(@NotNull Dependency dependency, @NotNull BiConsumer<Dependency, File> attach, @NotNull Runnable whenDone, boolean retried) {
+		// the startup thread only waits on repositories until the startup deadline
+		if (Thread.currentThread() == startupThread && !Deadline.isSet()) {
+			try {
+				Deadline.within(startupDeadline, () -> {
+					resolve(dependency, attach, whenDone, retried);
+					return null;
+				});
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+
+		DLoader.debug(" ", " ", blockBar(60), " ", blockArrow(dependency, "v"));
+
+		Urls.download(dependency, new File(dependencyFolder, dependency.getGroupId()), (jar, pom) -> {
+
+			if (!jar.exists() || !pom.exists()) {
+				// files deleted out from under the index, forget them and fetch again
+				if (!retried && ArtifactIndex.of(dependencyFolder).remove(dependency) != null) {
+					DLoader.debug("Indexed files of " + dependency.getName() + " are missing, downloading them again");
+					resolve(dependency, attach, whenDone, true);
+					return;
+				}
+
+				if (Deadline.isPassed()) {
+					fallBack(dependency, attach, whenDone);
+					return;
+				}
+
+				DLoader.debug("POM File Downloaded -> " + pom.exists(), "Jar File Downloaded -> " + jar.exists());
+			} else {
+				attach.accept(dependency, jar);
+				resolveChildren(dependency, pom, attach, whenDone);
+			}
+		});
+	}
+
+	/**
+	 * Out of time to download a Dependency, use any cached version of it instead, or finish loading it in the background
+	 */
+	private void fallBack(@NotNull Dependency dependency, @NotNull BiConsumer<Dependency, File> attach, @NotNull Runnable whenDone) {
+		final ArtifactEntry cached = ArtifactIndex.of(dependencyFolder).getAnyVersion(dependency);
+
+		// running out of time says nothing about the repository, the background gets a fresh try
+		Urls.forgetFailure(dependency, new File(dependencyFolder, dependency.getGroupId()));
+
+		if (cached == null) {
+			DLoader.log(Level.WARNING, "Out of time loading " + dependency.getName() + ", it will finish loading in the background");
+			background.execute(() -> resolve(dependency, attach, whenDone));
+			return;
+		}
+
+		DLoader.log(Level.WARNING, "Out of time loading " + dependency.getName() + ", using cached version " + cached.getVersion() + " instead of " + dependency.getVersion() + " until the next restart");
+
+		// have the requested version ready for next time
+		background.execute(() -> Urls.download(dependency, new File(dependencyFolder, dependency.getGroupId()), (jar, pom) -> {}));
+
+		final DOptions   options    = dependency.getOptions();
+		final Dependency substitute = new Dependency(dependency.getName(), cached.getVersion(), dependency.getGroupId(), dependency.getArtifactId(), options.getCustomRepository(), options.isAlwaysUpdate());
+		substitute.getOptions().setExtraRepositories(options.getExtraRepositories());
+		substitute.setParent(dependency.getParent());
+
+		resolve(substitute, attach, whenDone);
+	}
+
+	private void resolveChildren(@NotNull Dependency dependency, @NotNull File pomFile, @NotNull BiConsumer<Dependency, File> attach, @NotNull Runnable whenDone) {
+		DLoader.debug("Loading child dependencies of " + dependency.getName());
+		List<Dependency> children = Xmls.readChildren(dependency, pomFile);
+		if (children.isEmpty()) {
+			DLoader.debug("No children found in " + dependency.getName(), blockArrow(dependency, "^"), blockBar(60), " ", " ");
+			whenDone.run();
+			return;
+		}
+
+		final AtomicInteger loaded = new AtomicInteger();
+
+		children.forEach(child -> resolve(child, attach, () -> {
+			if (loaded.incrementAndGet() == children.size()) {
+				DLoader.debug("Finished loading children from " + dependency.getName(), blockArrow(dependency, "^"), " ", blockBar(60), " ", " ");
+				whenDone.run();
+			}
+		}));
+	}
+
+
+	private static @NotNull String blockArrow(@NotNull Dependency dependency, @NotNull String c) {
+		final String generated = Strings.repeat(c, dependency.getParentDepth());
+		return generated.isEmpty() ? c + c + c : generated;
+	}
+
+	private static @NotNull String blockBar(int length) {
+		return Strings.repeat("=", length);
+	}
+
+}
@@ -0,0 +1,144 @@
+package com.sxtanna.util;
+
+import com.sxtanna.DLoader;
+import com.sxtanna.base.DOptions;
+import com.sxtanna.base.Dependency;
+import com.sxtanna.store.ArtifactEntry;
+import com.sxtanna.store.ArtifactIndex;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.logging.Level;
+
+/**
+ * Background update Utility class, keeps update checks off of the startup path
+ * <p> </p>
+ * <p>While the server runs, newer versions of "always-update" and SNAPSHOT Dependencies are downloaded into a staging folder</p>
+ * <p>On the next startup they are moved over the old files, before anything is loaded</p>
+ * <p>
+ * <p>The staging folder has its own {@link ArtifactIndex}, a Jar is only added to it once it is completely downloaded</p>
+ * <p>A Jar that isn't in it was never finished, and is ignored</p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Staging {
+
+	/**
+	 * Prevent Instantiation
+	 */
+	private Staging() {}
+
+
+	/**
+	 * Check if a newer version of this Dependency is available, and download it into the staging folder if so
+	 *
+	 * @param dependency    The Dependency to check
+	 * @param liveFolder    The Folder its current files are in
+	 * @param stagingFolder The Folder the newer files will be saved to
+	 */
+	@SuppressWarnings("ResultOfMethodCallIgnored")
+	public static void stage(@NotNull Dependency dependency, @NotNull File liveFolder, @NotNull File stagingFolder) {
+		final File stagedJar = new File(stagingFolder, dependency.getJarName()), stagedPom = new File(stagingFolder, dependency.getPomName());
+
+		final ArtifactIndex liveIndex    = ArtifactIndex.of(liveFolder.getParentFile());
+		final ArtifactIndex stagingIndex = ArtifactIndex.of(stagingFolder.getParentFile());
+
+		if (stagingIndex.get(dependency) != null) return;
+		if (!stagingFolder.exists()) stagingFolder.mkdirs();
+
+		try {
+			Locks.withLock(new File(stagingFolder, dependency.getJarName() + ".lock"), () -> Urls.deletePartial(stagedJar, stagedPom), () -> {
+				final ArtifactEntry live       = liveIndex.get(dependency);
+				final DOptions      options    = dependency.getOptions();
+				final String        snapshot, pomUrl, jarUrl;
+
+				if (dependency.getVersion().endsWith("-SNAPSHOT")) {
+					snapshot = Urls.readLatestSnapshotName(dependency, stagingFolder);
+					if (snapshot.endsWith("ERROR") || (live != null && live.getSnapshot().equals(snapshot))) return null;
+
+					pomUrl = Urls.getBaseUrl(dependency) + snapshot + ".pom";
+					jarUrl = Urls.getBaseUrl(dependency) + snapshot + ".jar";
+				} else {
+					snapshot = "";
+
+					if (live != null) {
+						final String remoteSha1 = Urls.readRemoteSha1(Urls.getJarUrl(dependency), options);
+						if (remoteSha1.isEmpty() || remoteSha1.equalsIgnoreCase(live.getSha1())) return null;
+					}
+
+					pomUrl = Urls.getPomUrl(dependency);
+					jarUrl = Urls.getJarUrl(dependency);
+				}
+
+				Urls.tryDownload(pomUrl, stagedPom, options);
+				final Urls.Download download = Urls.tryDownload(jarUrl, stagedJar, options);
+
+				if (download == null || !stagedPom.exists()) {
+					FileUtils.deleteQuietly(stagedJar);
+					FileUtils.deleteQuietly(stagedPom);
+					return null;
+				}
+
+				stagingIndex.put(download.toEntry(dependency, stagedJar, snapshot));
+				stagingIndex.save();
+
+				DLoader.log(Level.INFO, "Staged an update of " + dependency.getName() + " for the next restart");
+
+				return null;
+			});
+		} catch (Exception e) {
+			e.printStackTrace();
+			DLoader.log(Level.SEVERE, "Failed to stage update of dependency " + dependency.getName());
+		}
+	}
+
+	/**
+	 * Move every finished staged update into the live folder
+	 * <p>Should be called on startup, before any Dependency is loaded</p>
+	 *
+	 * @param liveRoot    The root Dependencies folder
+	 * @param stagingRoot The root staging folder
+	 */
+	@SuppressWarnings("ResultOfMethodCallIgnored")
+	public static void apply(@NotNull File liveRoot, @NotNull File stagingRoot) {
+		if (!stagingRoot.exists()) return;
+
+		final ArtifactIndex liveIndex    = ArtifactIndex.of(liveRoot);
+		final ArtifactIndex stagingIndex = ArtifactIndex.of(stagingRoot);
+
+		if (stagingIndex.getEntries().isEmpty()) return;
+
+		for (ArtifactEntry entry : new ArrayList<>(stagingIndex.getEntries())) {
+			final File group = new File(stagingRoot, entry.getGroupId()), liveFolder = new File(liveRoot, entry.getGroupId());
+			if (!liveFolder.exists()) liveFolder.mkdirs();
+
+			final File liveJar = new File(liveFolder, entry.getJarName()), livePom = new File(liveFolder, entry.getPomName());
+
+			try {
+				Locks.withLock(new File(liveFolder, entry.getJarName() + ".lock"), () -> Urls.deletePartial(liveJar, livePom), () ->
+						Locks.withLock(new File(group, entry.getJarName() + ".lock"), () -> {}, () -> {
+							final File stagedJar = new File(group, entry.getJarName()), stagedPom = new File(group, entry.getPomName());
+
+							if (stagedJar.exists()) {
+								if (stagedPom.exists()) Urls.moveAtomically(stagedPom, livePom);
+								Urls.moveAtomically(stagedJar, liveJar);
+
+								liveIndex.put(entry);
+								DLoader.log(Level.INFO, "Applied staged update " + entry.getJarName());
+							}
+
+							stagingIndex.remove(entry.getKey());
+							return null;
+						}));
+			} catch (Exception e) {
+				e.printStackTrace();
+				DLoader.log(Level.SEVERE, "Failed to apply staged update " + entry.getJarName());
+			}
+		}
+
+		liveIndex.save();
+		stagingIndex.save();
+	}
+
+}
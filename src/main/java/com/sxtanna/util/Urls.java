@@ -3,18 +3,32 @@ package com.sxtanna.util;
 import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import com.sxtanna.DLoader;
+import com.sxtanna.base.DOptions;
 import com.sxtanna.base.Dependency;
+import com.sxtanna.store.ArtifactEntry;
+import com.sxtanna.store.ArtifactIndex;
+import com.sxtanna.transport.Transports;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiConsumer;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -30,8 +44,39 @@ public final class Urls {
 
 	/**
 	 * Main Repository and Fallback URLs
+	 * <p>Copy on write, reads happen for every file downloaded while writes only happen on startup</p>
 	 */
-	private static final List<String> REPOSITORIES = new ArrayList<>();
+	private static final List<String> REPOSITORIES = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Downloads currently in progress, keyed by the Jar file they are writing to
+	 * <p>Concurrent requests for the same artifact join the running download instead of starting another</p>
+	 */
+	private static final Map<File, CompletableFuture<Void>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+	/**
+	 * Index keys of the artifacts downloaded or checked for updates during startup
+	 * <p>Loading them after resolving everything declared doesn't ask a repository again</p>
+	 * <p>Cleared once startup is over, from then on "always-update" and SNAPSHOT Dependencies are checked on every load as usual</p>
+	 */
+	private static final Set<String> VALIDATED = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Jars that failed or ran out of time downloading during startup, keyed like {@link #IN_FLIGHT}
+	 * <p>Other Dependencies sharing one fail right away, instead of waiting out the same timeouts again</p>
+	 * <p>Cleared once startup is over, along with {@link #VALIDATED}</p>
+	 */
+	private static final Set<File> FAILED = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Whether any local copy should be used as is, leaving updates to {@link Staging}
+	 */
+	private static volatile boolean preferLocal = false;
+
+	/**
+	 * Longest a single Dependency may spend downloading, across every Repository, 0 for no limit
+	 */
+	private static volatile long artifactTimeout = 0;
 
 	static {
 		REPOSITORIES.add("https://repo1.maven.org/maven2/");
@@ -46,6 +91,69 @@ public final class Urls {
 		addRepositories(Arrays.asList(repositories));
 	}
 
+	/**
+	 * Replace every repository, including Central
+	 * <p>For pointing the loader at a single mirror, or at a fake repository while benchmarking</p>
+	 *
+	 * @param repositories The only repositories that will be used
+	 */
+	public static void setRepositories(@NotNull List<String> repositories) {
+		REPOSITORIES.clear();
+		addRepositories(repositories);
+	}
+
+	/**
+	 * Set whether downloads should use any local copy as is
+	 * <p>When true, "always-update" and SNAPSHOT Dependencies are not checked for updates if they are already downloaded</p>
+	 *
+	 * @param preferLocal True to skip update checks
+	 */
+	public static void setPreferLocal(boolean preferLocal) {
+		Urls.preferLocal = preferLocal;
+	}
+
+	/**
+	 * Every repository in use, in the order they are tried
+	 *
+	 * @return The repositories
+	 */
+	public static @NotNull List<String> getRepositories() {
+		return Collections.unmodifiableList(REPOSITORIES);
+	}
+
+	/**
+	 * Forget which artifacts were checked for updates, or failed to download
+	 * <p>Called once startup is over, and by the startup benchmark, which runs many startups in one JVM</p>
+	 */
+	public static void forgetStartup() {
+		VALIDATED.clear();
+		FAILED.clear();
+	}
+
+	/**
+	 * Forget that a Dependency failed to download, so the next request tries again
+	 *
+	 * @param dependency The Dependency
+	 * @param folder     The Folder its files are saved in
+	 */
+	static void forgetFailure(@NotNull Dependency dependency, @NotNull File folder) {
+		FAILED.remove(new File(folder, dependency.getJarName()));
+	}
+
+	public static boolean isPreferringLocal() {
+		return preferLocal;
+	}
+
+	/**
+	 * Set the time budget of each Dependency's download, across every Repository it is tried in
+	 * <p>A thread's own {@link Deadline} still applies if it is sooner</p>
+	 *
+	 * @param artifactTimeout The budget in millis, 0 for no limit
+	 */
+	public static void setArtifactTimeout(long artifactTimeout) {
+		Urls.artifactTimeout = artifactTimeout;
+	}
+
 
 	/**
 	 * Prevent Instantiation
@@ -117,85 +225,231 @@ public final class Urls {
 	 * @param dependency The Dependency to be downloaded
 	 * @param folder     The Folder where the files will be saved
 	 * @param whenDone   Operation to be ran when they are downloaded, first File is the Jar, second is the POM
+	 *                   <p>Either may not exist, if the download failed or ran out of time</p>
 	 */
-	@SuppressWarnings("ResultOfMethodCallIgnored")
 	public static void download(@NotNull Dependency dependency, @NotNull File folder, @NotNull BiConsumer<File, File> whenDone) {
 		final File jarFile = new File(folder, dependency.getJarName()), pomFile = new File(folder, dependency.getPomName());
 
-		boolean alwaysUpdate = dependency.getOptions().isAlwaysUpdate(), isSnapShot = dependency.getVersion().endsWith("-SNAPSHOT");
+		if (FAILED.contains(jarFile)) {
+			DLoader.debug("Dependency " + dependency.getName() + " already failed to download, not trying again");
+
+			whenDone.accept(jarFile, pomFile);
+			return;
+		}
+
+		final CompletableFuture<Void> flight   = new CompletableFuture<>();
+		final CompletableFuture<Void> existing = IN_FLIGHT.putIfAbsent(jarFile, flight);
+
+		if (existing != null) {
+			DLoader.debug("Dependency " + dependency.getName() + " is already being downloaded, waiting for it");
+
+			try {
+				existing.get(Math.min(Deadline.remaining(), TimeUnit.DAYS.toMillis(1)), TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				DLoader.debug("Ran out of time waiting for " + dependency.getName());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException ignored) {
+			}
 
-		if (jarFile.exists() && !isSnapShot && !alwaysUpdate) {
 			whenDone.accept(jarFile, pomFile);
 			return;
 		}
 
+		try {
+			Deadline.within(Deadline.after(artifactTimeout), () -> {
+				fetch(dependency, folder, jarFile, pomFile);
+				return null;
+			});
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			// nothing usable and nothing indexed, a stale entry is still worth the one retry the Resolver gives it
+			if ((!jarFile.exists() || !pomFile.exists()) && ArtifactIndex.of(folder.getParentFile()).get(dependency) == null) FAILED.add(jarFile);
+
+			IN_FLIGHT.remove(jarFile, flight);
+			flight.complete(null);
+		}
+
+		whenDone.accept(jarFile, pomFile);
+	}
+
+
+	@SuppressWarnings("ResultOfMethodCallIgnored")
+	private static void fetch(@NotNull Dependency dependency, @NotNull File folder, @NotNull File jarFile, @NotNull File pomFile) {
+		boolean alwaysUpdate = dependency.getOptions().isAlwaysUpdate(), isSnapShot = dependency.getVersion().endsWith("-SNAPSHOT");
+
+		final ArtifactIndex index = ArtifactIndex.of(folder.getParentFile());
+		final String        key   = ArtifactEntry.keyOf(dependency);
+
+		// once out of time, any local copy beats waiting on an update check
+		if (index.get(dependency) != null && (preferLocal || VALIDATED.contains(key) || Deadline.isPassed() || (!isSnapShot && !alwaysUpdate))) return;
+
 		if (!folder.exists()) folder.mkdirs();
 
+		final long waitStart = System.currentTimeMillis();
+		final File lockFile  = new File(folder, dependency.getJarName() + ".lock");
+
 		try {
+			Locks.withLock(lockFile, () -> deletePartial(jarFile, pomFile), () -> {
+
+				// another process may have finished this download while we waited for the lock, it indexes before unlocking
+				index.refresh();
+
+				final ArtifactEntry current = index.get(dependency);
+				if (current != null && jarFile.exists() && pomFile.exists() && (current.getFetched() >= waitStart || (!isSnapShot && !alwaysUpdate))) {
+					DLoader.debug("Dependency " + dependency.getName() + " was downloaded by another process");
+					return null;
+				}
+
+				final DOptions options = dependency.getOptions();
+
+				// on disk, but not indexed yet, an artifact is only indexed once its POM is there too
+				if (jarFile.exists() && current == null && !isSnapShot && !alwaysUpdate) {
+					if (!pomFile.exists()) tryDownload(getPomUrl(dependency), pomFile, options);
+					if (pomFile.exists()) index.record(dependency, jarFile, "");
+
+					return null;
+				}
 
-			final String pomUrl, jarUrl;
-			final String customRepo = dependency.getOptions().getCustomRepository();
+				final String pomUrl, jarUrl, snapshot;
 
-			if (isSnapShot) {
-				final File metaFile = new File(folder, "meta.xml");
-				tryDownload(getMetaUrl(dependency), metaFile, customRepo);
+				if (isSnapShot) {
+					snapshot = readLatestSnapshotName(dependency, folder);
 
-				final String latestSnapShot = Xmls.readLatestSnapshot(dependency, metaFile);
-				final String latestFileName = dependency.getArtifactId() + "-" + latestSnapShot;
+					final ArtifactEntry entry = index.get(dependency);
 
-				final File latestFile = new File(folder, latestFileName);
-				if (latestFile.exists() && !alwaysUpdate) {
-					whenDone.accept(jarFile, pomFile);
-					return;
+					// no metadata, ie. the repository timed out, there is no build to download
+					if (snapshot.endsWith("ERROR")) {
+						DLoader.log(Level.WARNING, "Couldn't find the latest build of " + dependency.getName() + (entry != null ? ", keeping the one already downloaded" : ""));
+						return null;
+					}
+					if (entry != null && entry.getSnapshot().equals(snapshot) && jarFile.exists() && !alwaysUpdate) return null;
+
+					pomUrl = getBaseUrl(dependency) + snapshot + ".pom";
+					jarUrl = getBaseUrl(dependency) + snapshot + ".jar";
 				} else {
-					if (pomFile.exists()) FileUtils.forceDelete(pomFile);
-					if (jarFile.exists()) FileUtils.forceDelete(jarFile);
+					snapshot = "";
+
+					pomUrl = getPomUrl(dependency);
+					jarUrl = getJarUrl(dependency);
 				}
 
-				pomUrl = getBaseUrl(dependency) + latestFileName + ".pom";
-				jarUrl = getBaseUrl(dependency) + latestFileName + ".jar";
+				tryDownload(pomUrl, pomFile, options);
+				final Download download = tryDownload(jarUrl, jarFile, options);
 
-				latestFile.createNewFile();
-			} else {
-				pomUrl = getPomUrl(dependency);
-				jarUrl = getJarUrl(dependency);
-			}
+				if (download != null && pomFile.exists()) {
+					index.put(download.toEntry(dependency, jarFile, snapshot));
+					index.save();
+				}
 
-			tryDownload(pomUrl, pomFile, customRepo);
-			tryDownload(jarUrl, jarFile, customRepo);
+				return null;
+			});
 
-			whenDone.accept(jarFile, pomFile);
+			// checked once, failed or not, the rest of this run uses whatever is on disk now
+			if (index.get(dependency) != null && jarFile.exists() && pomFile.exists()) VALIDATED.add(key);
 		} catch (Exception e) {
+			if (Deadline.isPassed()) {
+				DLoader.log(Level.WARNING, "Ran out of time downloading dependency " + dependency.getName());
+				return;
+			}
+
 			e.printStackTrace();
 			DLoader.log(Level.SEVERE, "Failed to download dependency " + dependency.getName());
 		}
 	}
 
 
-	private static void tryDownload(@NotNull String fileUrl, @NotNull File file, @NotNull String... customUrl) throws Exception {
+	/**
+	 * Downloads the snapshot metadata of this Dependency, and reads the file name of its latest build
+	 *
+	 * @param dependency The snapshot Dependency
+	 * @param folder     The Folder to download the metadata to
+	 * @return The file name of the latest build, without an extension, ending with "ERROR" if it couldn't be read
+	 */
+	static @NotNull String readLatestSnapshotName(@NotNull Dependency dependency, @NotNull File folder) throws Exception {
+		final File metaFile = new File(folder, dependency.getArtifactId() + "-" + dependency.getVersion() + "-meta.xml");
+		if (tryDownload(getMetaUrl(dependency), metaFile, dependency.getOptions()) == null) return dependency.getArtifactId() + "-ERROR";
+
+		return dependency.getArtifactId() + "-" + Xmls.readLatestSnapshot(dependency, metaFile);
+	}
+
+	/**
+	 * Reads the SHA-1 hash a repository publishes for a file, without downloading the file
+	 *
+	 * @param fileUrl The Url extension pointing to the File
+	 * @param options The options of the Dependency the File belongs to
+	 * @return The hash, or an empty String if no repository has one
+	 */
+	static @NotNull String readRemoteSha1(@NotNull String fileUrl, @NotNull DOptions options) {
+		for (String url : getRepositories(options)) {
+			final String[] sha1 = {""};
+
+			try {
+				openStream(url + fileUrl + ".sha1", (shaUrl, shaStream) -> {
+					try {
+						sha1[0] = IOUtils.toString(shaStream).trim().split("\\s+")[0];
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				});
+			} catch (IOException e) {
+				DLoader.debug("No SHA-1 for " + fileUrl + " in repo '" + url + "'");
+			}
+
+			if (!sha1[0].isEmpty()) return sha1[0];
+		}
+
+		return "";
+	}
+
+
+	/**
+	 * Every repository a file would be looked for in, in order
+	 *
+	 * @param options The options of the Dependency the file belongs to
+	 * @return Its custom repository alone if it has one, otherwise every repository followed by its extra ones
+	 */
+	static @NotNull List<String> getRepositories(@NotNull DOptions options) {
+		if (!options.getCustomRepository().isEmpty()) return Collections.singletonList(options.getCustomRepository());
+		if (options.getExtraRepositories().isEmpty()) return REPOSITORIES;
+
+		final List<String> repositories = new ArrayList<>(REPOSITORIES);
+		options.getExtraRepositories().stream().filter(repository -> !repositories.contains(repository)).forEach(repositories::add);
+
+		return repositories;
+	}
+
+	/**
+	 * Download a file from the first repository that has it
+	 *
+	 * @param fileUrl The Url extension pointing to the File
+	 * @param file    The local file it will be saved to
+	 * @param options The options of the Dependency the File belongs to, for its repositories
+	 * @return Where the file came from, or null if no repository had it
+	 */
+	static @Nullable Download tryDownload(@NotNull String fileUrl, @NotNull File file, @NotNull DOptions options) throws Exception {
 		DLoader.debug("Attempting to download " + fileUrl);
 
-		if (customUrl.length > 0 && !customUrl[0].isEmpty()) {
-			openStream(customUrl[0] + fileUrl, (url, stream) -> pullFromStreamToFile(stream, url, file));
-			return;
+		if (!options.getCustomRepository().isEmpty()) {
+			return pullToFile(options.getCustomRepository(), fileUrl, file);
 		}
 
-		for (String url : REPOSITORIES) {
-			final String actualUrl = url + fileUrl;
-			DLoader.debug("URL is '" + actualUrl + "'");
+		for (String url : getRepositories(options)) {
+			DLoader.debug("URL is '" + url + fileUrl + "'");
 			try {
-				openStream(actualUrl, (fUrl, stream) -> pullFromStreamToFile(stream, fUrl, file));
-				return;
+				return pullToFile(url, fileUrl, file);
 			} catch (IOException e) {
 				DLoader.log(Level.WARNING, "Failed to download from repo '" + url + "'");
 			}
 		}
 
 		DLoader.log(Level.SEVERE, "Failed to download " + fileUrl);
+		return null;
 	}
 
 	private static void openStream(@NotNull String url, @NotNull BiConsumer<String, InputStream> block) throws IOException {
-		try (InputStream stream = new URL(url).openStream()) {
+		try (InputStream stream = Transports.forUrl(url).open(url)) {
 			block.accept(url, stream);
 		}
 	}
@@ -204,43 +458,113 @@ public final class Urls {
 	 * <b>VERY IMPORTANT METHOD</b>
 	 * <p>
 	 * <p>This is basically the core of this entire damn thing, believe it or not..</p>
-	 * <p>This will download the file this stream points to</p>
+	 * <p>This will download the file this url points to, using the {@link com.sxtanna.transport.Transport} for its scheme</p>
 	 * <p>After downloading this will also validate the file with its SHA-1 hash</p>
+	 * <p>
+	 * <p>The file is written next to its destination first, and only moved into place once it is complete and valid</p>
+	 * <p>That way another server sharing this folder can never attach a half written Jar</p>
 	 *
-	 * @param stream The URL pointing to the root of the Repository
-	 * @param url    The Url extension pointing to the File
-	 * @param file   The local file it will be saved to
+	 * @param repository The URL pointing to the root of the Repository
+	 * @param fileUrl    The Url extension pointing to the File
+	 * @param file       The local file it will be saved to
+	 * @return Where the file came from
+	 * @throws IOException If the file couldn't be downloaded, or failed validation
 	 */
-	private static void pullFromStreamToFile(@NotNull InputStream stream, @NotNull String url, @NotNull File file) {
+	private static @NotNull Download pullToFile(@NotNull String repository, @NotNull String fileUrl, @NotNull File file) throws IOException {
+		final String url      = repository + fileUrl;
+		final File   partFile = getPartFile(file);
+
 		try {
-			FileUtils.copyInputStreamToFile(stream, file);
+			final String etag = Transports.forUrl(url).fetch(url, partFile);
+			final String sha1 = file.getName().endsWith(".jar") ? Files.hash(partFile, Hashing.sha1()).toString() : "";
+
+			if (!sha1.isEmpty() && DLoader.isEnforcingFileCheck() && !validate(url, file.getName(), sha1)) {
+				throw new IOException("Failed to validate downloaded file " + file.getName());
+			}
+
+			moveAtomically(partFile, file);
+
+			return new Download(repository, etag, sha1);
+		} finally {
+			FileUtils.deleteQuietly(partFile);
+		}
+	}
 
-			if (!file.getName().endsWith(".jar") || !DLoader.isEnforcingFileCheck()) return;
+	private static boolean validate(@NotNull String url, @NotNull String fileName, @NotNull String fileSha1) {
+		final boolean[] valid = {true};
 
+		try {
 			openStream(url + ".sha1", (shaUrl, shaStream) -> {
 
 				try {
-					final String mavenSha1 = IOUtils.toString(shaStream);
-					final String fileSha1  = Files.hash(file, Hashing.sha1()).toString();
+					final String mavenSha1 = IOUtils.toString(shaStream).trim().split("\\s+")[0];
 
 					DLoader.debug("Maven SHA-1: " + mavenSha1, "File SHA-1: " + fileSha1);
 
-					if (!mavenSha1.equals(fileSha1)) {
-						FileUtils.forceDelete(file);
-						throw new IllegalStateException("Failed to validate downloaded file " + file.getName());
-					}
-
-					DLoader.debug("File " + file.getName() + " passed validation");
+					valid[0] = mavenSha1.equalsIgnoreCase(fileSha1);
+					if (valid[0]) DLoader.debug("File " + fileName + " passed validation");
 
-				} catch (Exception e) {
+				} catch (IOException e) {
 					e.printStackTrace();
 				}
 			});
-
 		} catch (IOException e) {
-			e.printStackTrace();
-			DLoader.log(Level.SEVERE, "Failed to download url to file " + file.getName());
+			DLoader.debug("No SHA-1 available for " + url + ", skipping validation");
+		}
+
+		return valid[0];
+	}
+
+	/**
+	 * Moves a file into place, replacing whatever was there without ever leaving it missing
+	 */
+	static void moveAtomically(@NotNull File from, @NotNull File to) throws IOException {
+		java.nio.file.Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static @NotNull File getPartFile(@NotNull File file) {
+		return new File(file.getParentFile(), file.getName() + ".part");
+	}
+
+	/**
+	 * Removes files left behind by a process that died while downloading
+	 */
+	static void deletePartial(@NotNull File... files) {
+		for (File file : files) FileUtils.deleteQuietly(getPartFile(file));
+	}
+
+
+	/**
+	 * Where a downloaded file came from
+	 */
+	static final class Download {
+
+		@NotNull
+		private final String repository, etag, sha1;
+
+
+		private Download(@NotNull String repository, @NotNull String etag, @NotNull String sha1) {
+			this.repository = repository;
+			this.etag = etag;
+			this.sha1 = sha1;
 		}
+
+
+		/**
+		 * Create the index entry for a downloaded Jar
+		 *
+		 * @param dependency The Dependency the Jar belongs to
+		 * @param jarFile    The Jar
+		 * @param snapshot   The file name of the resolved snapshot build, empty if not a snapshot
+		 * @return The entry
+		 */
+		@NotNull ArtifactEntry toEntry(@NotNull Dependency dependency, @NotNull File jarFile, @NotNull String snapshot) {
+			final long now = System.currentTimeMillis();
+
+			return new ArtifactEntry(dependency.getGroupId(), dependency.getArtifactId(), dependency.getVersion(),
+					jarFile.length(), sha1, repository, now, etag, snapshot, now);
+		}
+
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,194 @@
+package com.sxtanna.util;
+
+import com.sxtanna.DLoader;
+import com.sxtanna.base.Attachment.AttachmentClassLoader;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+
+/**
+ * Class warmup Utility class, moves the cost of loading a Dependency's classes off of the main thread
+ * <p> </p>
+ * <p>After a Jar is attached, its classes are loaded on a background thread, before any Plugin asks for them</p>
+ * <p>Which classes is either configured, or recorded on shutdown from the classes that were actually loaded</p>
+ * <p>
+ * <p>The record is a plain text file, one "key class" pair per line, where key is the Jar's group folder and name</p>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class Warmup {
+
+	/**
+	 * Most classes recorded per Jar, ones past this are loaded on demand as usual
+	 */
+	private static final int MAX_RECORDED = 2000;
+
+	private static Method findLoadedClass;
+
+	static {
+		try {
+			findLoadedClass = ClassLoader.class.getDeclaredMethod("findLoadedClass", String.class);
+			findLoadedClass.setAccessible(true);
+		} catch (Exception e) {
+			DLoader.debug("Classes loaded by the system ClassLoader can't be recorded on this JVM");
+			findLoadedClass = null;
+		}
+	}
+
+
+	/**
+	 * Prevent Instantiation
+	 */
+	private Warmup() {}
+
+
+	/**
+	 * Load and link classes in a ClassLoader, ignoring any that fail
+	 * <p>This blocks while loading, and should be called from a background thread</p>
+	 * <p>Linking includes bytecode verification, usually the larger part of the cost, so the first use only has to initialize them</p>
+	 *
+	 * @param loader     The ClassLoader the Jar is attached to
+	 * @param classNames Binary names of the classes to load
+	 * @param initialize Whether to also run their static initializers
+	 * @return How many were loaded
+	 */
+	public static int preload(@NotNull ClassLoader loader, @NotNull Collection<String> classNames, boolean initialize) {
+		int loaded = 0;
+
+		for (String className : classNames) {
+			try {
+				final Class<?> loadedClass = Class.forName(className, initialize, loader);
+
+				// loading alone leaves linking to the first use, the JVM links a class before reflecting on its members
+				if (!initialize) loadedClass.getDeclaredConstructors();
+
+				loaded++;
+			} catch (ClassNotFoundException | LinkageError e) {
+				DLoader.debug("Failed to warm up class " + className + " (" + e + ")");
+			}
+		}
+
+		return loaded;
+	}
+
+	/**
+	 * Find which classes of a Jar a ClassLoader has loaded so far
+	 *
+	 * @param loader The ClassLoader the Jar is attached to
+	 * @param jar    The Jar
+	 * @return Binary names of the loaded classes, in Jar order
+	 */
+	public static @NotNull List<String> findLoaded(@NotNull ClassLoader loader, @NotNull File jar) {
+		final List<String> loaded = new ArrayList<>();
+		if (findLoadedClass == null && !(loader instanceof AttachmentClassLoader)) return loaded;
+
+		for (String className : listClasses(jar)) {
+			try {
+				if (loader instanceof AttachmentClassLoader ? ((AttachmentClassLoader) loader).isLoaded(className) : findLoadedClass.invoke(loader, className) != null) loaded.add(className);
+			} catch (Exception e) {
+				break;
+			}
+
+			if (loaded.size() >= MAX_RECORDED) break;
+		}
+
+		return loaded;
+	}
+
+	/**
+	 * The key a Jar's classes are recorded under, its group folder and name
+	 *
+	 * @param jar The Jar
+	 * @return The key
+	 */
+	public static @NotNull String keyOf(@NotNull File jar) {
+		return jar.getParentFile().getName() + '/' + jar.getName();
+	}
+
+
+	/**
+	 * Read recorded classes
+	 *
+	 * @param file The record file
+	 * @return Recorded class names by Jar key, empty if the file doesn't exist
+	 */
+	public static @NotNull Map<String, List<String>> read(@NotNull File file) {
+		final Map<String, List<String>> recorded = new LinkedHashMap<>();
+		if (!file.exists()) return recorded;
+
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line;
+
+			while ((line = reader.readLine()) != null) {
+				final int split = line.indexOf(' ');
+				if (split <= 0) continue;
+
+				recorded.computeIfAbsent(line.substring(0, split), key -> new ArrayList<>()).add(line.substring(split + 1).trim());
+			}
+		} catch (IOException e) {
+			DLoader.log(Level.WARNING, "Failed to read recorded warmup classes from " + file.getPath());
+		}
+
+		return recorded;
+	}
+
+	/**
+	 * Write recorded classes, replacing the file
+	 *
+	 * @param file     The record file
+	 * @param recorded Recorded class names by Jar key
+	 */
+	public static void write(@NotNull File file, @NotNull Map<String, List<String>> recorded) {
+		final File tempFile = new File(file.getPath() + ".part");
+
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(tempFile.toPath(), StandardCharsets.UTF_8)) {
+				for (Map.Entry<String, List<String>> entry : recorded.entrySet()) {
+					for (String className : entry.getValue()) {
+						writer.write(entry.getKey() + ' ' + className);
+						writer.newLine();
+					}
+				}
+			}
+
+			Urls.moveAtomically(tempFile, file);
+		} catch (IOException e) {
+			DLoader.log(Level.WARNING, "Failed to record warmup classes to " + file.getPath());
+		}
+	}
+
+
+	private static @NotNull List<String> listClasses(@NotNull File jar) {
+		final List<String> classes = new ArrayList<>();
+
+		try (JarFile jarFile = new JarFile(jar)) {
+			final Enumeration<JarEntry> entries = jarFile.entries();
+
+			while (entries.hasMoreElements()) {
+				final String name = entries.nextElement().getName();
+				if (!name.endsWith(".class") || name.startsWith("META-INF/") || name.endsWith("module-info.class") || name.endsWith("package-info.class")) continue;
+
+				classes.add(name.substring(0, name.length() - ".class".length()).replace('/', '.'));
+			}
+		} catch (IOException e) {
+			DLoader.debug("Failed to list classes of " + jar.getName());
+		}
+
+		return classes;
+	}
+
+}
@@ -4,6 +4,7 @@ import com.sxtanna.DLoader;
 import com.sxtanna.base.Dependency;
 import org.apache.commons.io.FileUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -102,6 +103,53 @@ public final class Xmls {
 		return dependencies;
 	}
 
+	/**
+	 * Read the child Dependencies of a Dependency from its POM file
+	 * <p>This is how the Dependency tree is walked, both when loading and when planning</p>
+	 *
+	 * @param parent  The Dependency the POM file belongs to
+	 * @param pomFile The POM file
+	 * @return The List of children, with their parent and its extra repositories set, or an Empty list if none
+	 */
+	public static @NotNull List<Dependency> readChildren(@NotNull Dependency parent, @NotNull File pomFile) {
+		final List<Dependency> children = readDependencies(pomFile);
+
+		children.forEach(child -> {
+			child.setParent(parent);
+			child.getOptions().setExtraRepositories(parent.getOptions().getExtraRepositories());
+		});
+
+		return children;
+	}
+
+	/**
+	 * Read the coordinates of the artifact a POM file describes
+	 * <p>The groupId and version are taken from its parent if the POM doesn't declare them</p>
+	 *
+	 * @param pomFile The POM file
+	 * @return The groupId, artifactId and version, in that order, or null if the POM can't be read
+	 */
+	public static @Nullable String[] readCoordinates(@NotNull File pomFile) {
+		try {
+			final Element document = readDocument(pomFile);
+			final Element parent   = readChild(document, "parent");
+
+			String groupId    = readChildTag(document, TAG_GROUP);
+			String version    = readChildTag(document, TAG_VERSION);
+			String artifactId = readChildTag(document, TAG_ARTIFACT);
+
+			if (groupId.isEmpty() && parent != null) groupId = readChildTag(parent, TAG_GROUP);
+			if (version.isEmpty() && parent != null) version = readChildTag(parent, TAG_VERSION);
+
+			if (groupId.isEmpty() || version.isEmpty() || artifactId.isEmpty()) return null;
+
+			return new String[]{groupId, artifactId, version};
+		} catch (Exception e) {
+			DLoader.debug("Failed to read coordinates of pom " + pomFile.getName());
+			return null;
+		}
+	}
+
 	/**
 	 * Reads the Latest Snapshot version from a Meta file, and then deletes it
 	 *
@@ -145,6 +193,22 @@ public final class Xmls {
 		return document.getDocumentElement();
 	}
 
+	private static @Nullable Element readChild(@NotNull Element element, @NotNull String tagName) {
+		final NodeList children = element.getChildNodes();
+
+		for (int i = 0; i < children.getLength(); i++) {
+			final Node child = children.item(i);
+			if (child instanceof Element && child.getNodeName().equals(tagName)) return (Element) child;
+		}
+
+		return null;
+	}
+
+	private static @NotNull String readChildTag(@NotNull Element element, @NotNull String tagName) {
+		final Element child = readChild(element, tagName);
+		return child == null ? "" : child.getTextContent().trim();
+	}
+
 	private static String readTag(@NotNull Element element, @NotNull String tagName) {
 		Node item = element.getElementsByTagName(tagName).item(0);
 		if (item == null) return "";
@@ -0,0 +1,289 @@
+package com.sxtanna.bench;
+
+import com.google.common.hash.Hashing;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * In process Maven repository, serving a fixture tree over HTTP
+ * <p>
+ * <p>Every file lives in memory, POMs, Jars, their ".sha1" files and "maven-metadata.xml" for snapshots</p>
+ * <p>Faults can be injected per path, so the loader can be measured against a misbehaving repository without the internet</p>
+ */
+public final class FakeRepository implements AutoCloseable {
+
+	private static final String SNAPSHOT_TIMESTAMP = "20170401.120000", SNAPSHOT_BUILD = "1";
+
+
+	private final HttpServer      server;
+	private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+		final Thread thread = new Thread(runnable, "FakeRepository");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+	private final Set<String> missing   = ConcurrentHashMap.newKeySet();
+	private final Set<String> truncated = ConcurrentHashMap.newKeySet();
+	private final Set<String> corrupted = ConcurrentHashMap.newKeySet();
+	private final Set<String> stalled   = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger requests = new AtomicInteger();
+	private final AtomicLong    bytes    = new AtomicLong();
+
+	private volatile long latency = 0;
+
+
+	public FakeRepository() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", this::handle);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+
+	/**
+	 * The root URL of this repository, ending with '/'
+	 *
+	 * @return The URL
+	 */
+	public @NotNull String getUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+	}
+
+
+	/**
+	 * Add an artifact to the fixture tree
+	 *
+	 * @param groupId    The groupId
+	 * @param artifactId The artifactId
+	 * @param version    The version, "-SNAPSHOT" versions also get a maven-metadata.xml
+	 * @param jarSize    Roughly how large the Jar should be, in bytes
+	 * @param children   Coordinates of runtime dependencies, as "group:artifact:version"
+	 */
+	public void addArtifact(@NotNull String groupId, @NotNull String artifactId, @NotNull String version, int jarSize, @NotNull String... children) {
+		final String base = groupId.replace('.', '/') + '/' + artifactId + '/' + version + '/';
+
+		String fileVersion = version;
+
+		if (version.endsWith("-SNAPSHOT")) {
+			fileVersion = version.replace("SNAPSHOT", SNAPSHOT_TIMESTAMP + "-" + SNAPSHOT_BUILD);
+			files.put(base + "maven-metadata.xml", metadata(groupId, artifactId, version));
+		}
+
+		final String name = base + artifactId + '-' + fileVersion;
+
+		putWithSha1(name + ".pom", pom(groupId, artifactId, version, children));
+		putWithSha1(name + ".jar", jar(artifactId, jarSize));
+	}
+
+
+	/**
+	 * Write the fixture tree to a folder, to be used as a local mirror
+	 *
+	 * @param folder The root of the mirror
+	 */
+	public void writeTo(@NotNull File folder) throws IOException {
+		for (Map.Entry<String, byte[]> entry : files.entrySet()) {
+			FileUtils.writeByteArrayToFile(new File(folder, entry.getKey()), entry.getValue());
+		}
+	}
+
+
+	/**
+	 * Delay every response by this many milliseconds
+	 */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * Respond with 404 for every path ending with this suffix
+	 */
+	public void failWith404(@NotNull String suffix) {
+		missing.add(suffix);
+	}
+
+	/**
+	 * Cut the body off halfway for every path ending with this suffix
+	 */
+	public void truncate(@NotNull String suffix) {
+		truncated.add(suffix);
+	}
+
+	/**
+	 * Serve a wrong ".sha1" for every path ending with this suffix
+	 */
+	public void corruptChecksum(@NotNull String suffix) {
+		corrupted.add(suffix + ".sha1");
+	}
+
+	/**
+	 * Accept the request and never answer it, for every path ending with this suffix
+	 */
+	public void stall(@NotNull String suffix) {
+		stalled.add(suffix);
+	}
+
+	/**
+	 * Remove every injected fault and reset the counters
+	 */
+	public void reset() {
+		latency = 0;
+		missing.clear();
+		truncated.clear();
+		corrupted.clear();
+		stalled.clear();
+
+		requests.set(0);
+		bytes.set(0);
+	}
+
+
+	public int getRequests() {
+		return requests.get();
+	}
+
+	public long getBytes() {
+		return bytes.get();
+	}
+
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+
+	private void handle(@NotNull HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+
+		final String path = exchange.getRequestURI().getPath().substring(1);
+
+		try {
+			if (latency > 0) Thread.sleep(latency);
+			if (matches(stalled, path)) Thread.sleep(TimeUnit.MINUTES.toMillis(10));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		byte[] body = files.get(path);
+
+		if (body == null || matches(missing, path)) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+
+		if (matches(corrupted, path)) body = Hashing.sha1().hashBytes(new byte[]{0}).toString().getBytes(StandardCharsets.UTF_8);
+
+		final boolean head = exchange.getRequestMethod().equalsIgnoreCase("HEAD");
+
+		if (head) {
+			exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+			exchange.sendResponseHeaders(200, -1);
+			exchange.close();
+			return;
+		}
+
+		// truncated bodies are sent chunked, so the response ends early but cleanly, and only the checksum can catch it
+		final boolean cut    = matches(truncated, path);
+		final int     length = cut ? body.length / 2 : body.length;
+
+		exchange.sendResponseHeaders(200, cut ? 0 : body.length);
+
+		try (OutputStream stream = exchange.getResponseBody()) {
+			stream.write(body, 0, length);
+			bytes.addAndGet(length);
+		}
+	}
+
+	private boolean matches(@NotNull Set<String> suffixes, @NotNull String path) {
+		for (String suffix : suffixes) if (path.endsWith(suffix)) return true;
+		return false;
+	}
+
+	private void putWithSha1(@NotNull String path, @NotNull byte[] body) {
+		files.put(path, body);
+		files.put(path + ".sha1", Hashing.sha1().hashBytes(body).toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+
+	private static @NotNull byte[] pom(@NotNull String groupId, @NotNull String artifactId, @NotNull String version, @NotNull String... children) {
+		final StringBuilder builder = new StringBuilder();
+
+		builder.append("<project>")
+		       .append("<modelVersion>4.0.0</modelVersion>")
+		       .append("<groupId>").append(groupId).append("</groupId>")
+		       .append("<artifactId>").append(artifactId).append("</artifactId>")
+		       .append("<version>").append(version).append("</version>")
+		       .append("<dependencies>");
+
+		for (String child : children) {
+			final String[] parts = child.split(":");
+
+			builder.append("<dependency>")
+			       .append("<groupId>").append(parts[0]).append("</groupId>")
+			       .append("<artifactId>").append(parts[1]).append("</artifactId>")
+			       .append("<version>").append(parts[2]).append("</version>")
+			       .append("<scope>runtime</scope>")
+			       .append("</dependency>");
+		}
+
+		builder.append("</dependencies>").append("</project>");
+
+		return builder.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static @NotNull byte[] metadata(@NotNull String groupId, @NotNull String artifactId, @NotNull String version) {
+		return ("<metadata>" +
+				"<groupId>" + groupId + "</groupId>" +
+				"<artifactId>" + artifactId + "</artifactId>" +
+				"<version>" + version + "</version>" +
+				"<versioning><snapshot>" +
+				"<timestamp>" + SNAPSHOT_TIMESTAMP + "</timestamp>" +
+				"<buildNumber>" + SNAPSHOT_BUILD + "</buildNumber>" +
+				"</snapshot></versioning>" +
+				"</metadata>").getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static @NotNull byte[] jar(@NotNull String artifactId, int size) {
+		final byte[] content = new byte[size];
+		new Random(artifactId.hashCode()).nextBytes(content);
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(size + 256);
+
+		try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+			zip.setLevel(0);
+			zip.putNextEntry(new ZipEntry(artifactId + "/payload.bin"));
+			zip.write(content);
+			zip.closeEntry();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+}
@@ -0,0 +1,202 @@
+package com.sxtanna.bench;
+
+import com.sxtanna.base.Dependency;
+import com.sxtanna.store.ArtifactIndex;
+import com.sxtanna.util.Deadline;
+import com.sxtanna.util.Prefetch;
+import com.sxtanna.util.Resolver;
+import com.sxtanna.util.Urls;
+import org.apache.commons.io.FileUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Offline benchmark of the startup load path, against a {@link FakeRepository}
+ * <p>
+ * <p>Each scenario resolves the same tree with the {@link Resolver} {@link com.sxtanna.DLoader#load(Dependency)} uses,
+ * minus attaching the Jars, and reports wall time, request count and bytes transferred</p>
+ * <p>
+ * <p>Run it with the test classpath, ie. <code>java -cp target/classes:target/test-classes:... com.sxtanna.bench.StartupBenchmark [rounds]</code></p>
+ */
+public final class StartupBenchmark {
+
+	private static final String ROOT = "com.example:server-app:1.0";
+
+	private static final int SMALL = 16 * 1024, LARGE = 512 * 1024;
+
+	/**
+	 * When set, the tree is downloaded in one parallel pass before being walked, the way DLoader#onLoad does it
+	 */
+	private static ExecutorService prefetchPool = null;
+
+	/**
+	 * When above 0, resolving is bounded by a startup deadline this many millis away, the way DLoader#onLoad does it
+	 */
+	private static long startupBudget = 0;
+
+	/**
+	 * Where whatever runs out of startup time finishes loading
+	 */
+	private static final ExecutorService BACKGROUND = Executors.newCachedThreadPool(runnable -> {
+		final Thread thread = new Thread(runnable, "bench-background");
+		thread.setDaemon(true);
+
+		return thread;
+	});
+
+
+	public static void main(String[] args) throws Exception {
+		final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+		try (FakeRepository repository = new FakeRepository(); FakeRepository broken = new FakeRepository()) {
+			fixture(repository);
+
+			Urls.setRepositories(Arrays.asList(repository.getUrl()));
+
+			System.out.println(String.format("%-28s %10s %10s %12s %8s", "scenario", "avg ms", "requests", "bytes", "loaded"));
+
+			run("cold", rounds, repository, true, repo -> {});
+			run("warm", rounds, repository, false, repo -> {});
+			run("cold, 25ms latency", rounds, repository, true, repo -> repo.setLatency(25));
+			run("warm, 25ms latency", rounds, repository, false, repo -> repo.setLatency(25));
+
+			prefetchPool = Executors.newFixedThreadPool(4, runnable -> {
+				final Thread thread = new Thread(runnable, "bench-prefetch");
+				thread.setDaemon(true);
+
+				return thread;
+			});
+
+			run("cold, parallel prefetch", rounds, repository, true, repo -> {});
+			run("cold, 25ms, parallel prefetch", rounds, repository, true, repo -> repo.setLatency(25));
+
+			prefetchPool.shutdownNow();
+			prefetchPool = null;
+
+			run("cold, missing jar", rounds, repository, true, repo -> repo.failWith404("util-io-2.1.jar"));
+			run("cold, truncated jar", rounds, repository, true, repo -> repo.truncate("codec-1.4.jar"));
+			run("cold, wrong checksum", rounds, repository, true, repo -> repo.corruptChecksum("codec-1.4.jar"));
+
+			Urls.setArtifactTimeout(TimeUnit.SECONDS.toMillis(2));
+			run("cold, stalled jar, 2s budget", rounds, repository, true, repo -> repo.stall("codec-1.4.jar"));
+			Urls.setArtifactTimeout(0);
+
+			startupBudget = TimeUnit.SECONDS.toMillis(1);
+			run("warm, stalled meta, 1s start", rounds, repository, false, repo -> repo.stall("maven-metadata.xml"));
+			startupBudget = 0;
+
+			Urls.setRepositories(Arrays.asList(broken.getUrl(), repository.getUrl()));
+			run("cold, first repo 404s", rounds, repository, true, repo -> {});
+
+			final File mirror = new File(System.getProperty("java.io.tmpdir"), "dloader-bench-mirror");
+			repository.writeTo(mirror);
+
+			Urls.setRepositories(Collections.singletonList(mirror.toURI().toString()));
+			run("cold, file mirror", rounds, repository, true, repo -> {});
+
+			Urls.setRepositories(Collections.singletonList(mirror.getPath()));
+			run("cold, directory mirror", rounds, repository, true, repo -> {});
+
+			FileUtils.deleteQuietly(mirror);
+			Urls.setRepositories(Collections.singletonList(repository.getUrl()));
+		}
+	}
+
+
+	/**
+	 * A small server, a handful of libraries sharing children, and one snapshot
+	 */
+	private static void fixture(@NotNull FakeRepository repository) {
+		repository.addArtifact("com.example", "server-app", "1.0", SMALL,
+				"com.example:util-core:3.0", "com.example:util-io:2.1", "com.example:net:1.2", "com.example:plugin-api:2.0-SNAPSHOT");
+
+		repository.addArtifact("com.example", "util-core", "3.0", LARGE, "org.example:codec:1.4");
+		repository.addArtifact("com.example", "util-io", "2.1", SMALL, "com.example:util-core:3.0");
+		repository.addArtifact("com.example", "net", "1.2", LARGE, "org.example:codec:1.4", "org.example:logging:0.9");
+		repository.addArtifact("com.example", "plugin-api", "2.0-SNAPSHOT", SMALL, "org.example:logging:0.9");
+
+		repository.addArtifact("org.example", "codec", "1.4", SMALL);
+		repository.addArtifact("org.example", "logging", "0.9", SMALL);
+	}
+
+	private static void run(@NotNull String name, int rounds, @NotNull FakeRepository repository, boolean cold, @NotNull Consumer<FakeRepository> faults) throws IOException {
+		final File folder = new File(System.getProperty("java.io.tmpdir"), "dloader-bench");
+
+		long totalNanos = 0, totalBytes = 0;
+		int  totalRequests = 0, loaded = 0;
+
+		for (int round = 0; round < rounds + 1; round++) {
+			// every round is a fresh startup
+			Urls.forgetStartup();
+
+			if (cold || !folder.exists()) {
+				FileUtils.deleteQuietly(folder);
+				Files.createDirectories(folder.toPath());
+				ArtifactIndex.forget(folder);
+
+				// warm scenarios need one untimed pass to fill the folder
+				if (!cold) load(folder);
+			}
+
+			repository.reset();
+			faults.accept(repository);
+
+			final long start = System.nanoTime();
+			final Set<Dependency> result = load(folder);
+			final long took = System.nanoTime() - start;
+
+			// first round is warmup for the JIT
+			if (round == 0) continue;
+
+			totalNanos += took;
+			totalBytes += repository.getBytes();
+			totalRequests += repository.getRequests();
+			loaded = result.size();
+		}
+
+		repository.reset();
+		FileUtils.deleteQuietly(folder);
+		ArtifactIndex.forget(folder);
+
+		System.out.println(String.format("%-28s %10.2f %10d %12d %8d",
+				name,
+				TimeUnit.NANOSECONDS.toMicros(totalNanos / rounds) / 1000.0,
+				totalRequests / rounds,
+				totalBytes / rounds,
+				loaded));
+	}
+
+	private static @NotNull Set<Dependency> load(@NotNull File folder) {
+		final String[] root = ROOT.split(":");
+		final Set<Dependency> loaded = ConcurrentHashMap.newKeySet();
+
+		final Dependency dependency = new Dependency(ROOT, root[2], root[0], root[1]);
+
+		final Resolver resolver = new Resolver(folder, BACKGROUND);
+		final long     deadline = Deadline.after(startupBudget);
+
+		if (startupBudget > 0) resolver.setStartup(Thread.currentThread(), deadline);
+
+		try {
+			if (prefetchPool != null) Deadline.within(deadline, () -> Prefetch.prefetch(Collections.singletonList(dependency), folder, prefetchPool));
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		resolver.resolve(dependency, (resolved, jar) -> loaded.add(resolved), () -> {});
+
+		return loaded;
+	}
+
+}